@@ -0,0 +1,43 @@
+package cn.judge.lab3;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BenchmarkMain类是基准测试的入口，默认开启GC分析器以报告分配速率.
+ * 命令行参数与JMH相同，例如只运行桥接词查询并换成更大的词汇表：
+ * "queryBridgeWords -p vocabulary=1000000".
+ */
+public final class BenchmarkMain {
+
+    /**
+     * 隐藏工具类构造器.
+     */
+    private BenchmarkMain() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * 运行基准测试.
+     *
+     * @param args JMH命令行参数.
+     * @throws RunnerException            运行失败时抛出.
+     * @throws CommandLineOptionException 参数无法解析时抛出.
+     */
+    public static void main(final String[] args)
+            throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(GraphBenchmark.class.getSimpleName());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,243 @@
+package cn.judge.lab3;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GraphBenchmark类是DirectedGraph各项操作的JMH基准测试.
+ * 语料由ZipfCorpus按固定种子生成，词汇表大小和文本长度可以用
+ * "-p vocabulary=..."和"-p words=..."调整. 查询的单词对取自语料中
+ * 相邻或相隔一个的单词，保证它们都在图中且互相可达.
+ * calcShortestPath会导出DOT文件并提交渲染，基准测试进程把渲染程序
+ * 替换为true命令，只测量查询和导出本身.
+ * 查询只在QUERIES个单词对之间循环，默认关闭查询缓存，否则预热之后
+ * 测到的全是缓存命中；用"-p queryCache=4096"可以单独测量命中的开销.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlab3.dot=true")
+@State(Scope.Benchmark)
+public class GraphBenchmark {
+    /**
+     * 预先取出的查询单词对数量.
+     */
+    private static final int QUERIES = 1024;
+
+    /**
+     * 生成新文本的输入单词数.
+     */
+    private static final int SENTENCE_WORDS = 256;
+
+    /**
+     * 生成语料的随机种子.
+     */
+    private static final long SEED = 20240614L;
+
+    /**
+     * 词汇表大小，JMH注入参数的字段必须是public的.
+     */
+    @Param({"1000", "100000"})
+    public int vocabulary;
+
+    /**
+     * 语料的单词数.
+     */
+    @Param({"200000"})
+    public int words;
+
+    /**
+     * Zipf分布的指数.
+     */
+    @Param({"1.0"})
+    public double exponent;
+
+    /**
+     * 查询缓存的条目数上限，为0时关闭缓存.
+     */
+    @Param({"0"})
+    public int queryCache;
+
+    /**
+     * 语料文本.
+     */
+    private String text;
+
+    /**
+     * 由语料构建的图.
+     */
+    private DirectedGraph graph;
+
+    /**
+     * 图的紧凑表示.
+     */
+    private CompactGraph compact;
+
+    /**
+     * 查询的起始单词.
+     */
+    private String[] from;
+
+    /**
+     * 相邻单词，与from组成最短路径查询.
+     */
+    private String[] next;
+
+    /**
+     * 相隔一个的单词，与from组成桥接词查询.
+     */
+    private String[] afterNext;
+
+    /**
+     * from对应的节点.
+     */
+    private Node[] fromNodes;
+
+    /**
+     * afterNext对应的节点.
+     */
+    private Node[] afterNextNodes;
+
+    /**
+     * 生成新文本的输入.
+     */
+    private String sentence;
+
+    /**
+     * 下一次查询使用的单词对下标.
+     */
+    private int cursor;
+
+    /**
+     * 随机游走的随机数生成器.
+     */
+    private Random random;
+
+    /**
+     * 生成语料、构建图并取出查询用的单词对.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = new ZipfCorpus(vocabulary, exponent).text(words, SEED);
+        graph = new DirectedGraph();
+        graph.configureQueryCache(queryCache, QueryCache.DEFAULT_MAX_BYTES);
+        graph.buildGraphFromText(text);
+        compact = graph.freeze();
+        String[] tokens = text.replaceAll("[^a-z\\s]", " ").trim()
+                .split("\\s+");
+        from = new String[QUERIES];
+        next = new String[QUERIES];
+        afterNext = new String[QUERIES];
+        fromNodes = new Node[QUERIES];
+        afterNextNodes = new Node[QUERIES];
+        Random picker = new Random(SEED);
+        for (int i = 0; i < QUERIES; i++) {
+            int at = picker.nextInt(tokens.length - 2);
+            from[i] = tokens[at];
+            next[i] = tokens[at + 1];
+            afterNext[i] = tokens[at + 2];
+            fromNodes[i] = graph.nodeOrCreate(from[i]);
+            afterNextNodes[i] = graph.nodeOrCreate(afterNext[i]);
+        }
+        sentence = String.join(" ", Arrays.copyOf(
+                tokens, Math.min(tokens.length, SENTENCE_WORDS)));
+        random = new Random(SEED);
+    }
+
+    /**
+     * 等待calcShortestPath提交的渲染全部完成.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DirectedGraph.shutdownRenderer();
+    }
+
+    private int nextQuery() {
+        cursor = (cursor + 1) & (QUERIES - 1);
+        return cursor;
+    }
+
+    /**
+     * 从整段语料构建图.
+     *
+     * @return 构建的图.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public DirectedGraph buildGraphFromText() {
+        DirectedGraph built = new DirectedGraph();
+        built.buildGraphFromText(text);
+        return built;
+    }
+
+    /**
+     * 查询桥接词.
+     *
+     * @return 查询结果.
+     */
+    @Benchmark
+    public String queryBridgeWords() {
+        int i = nextQuery();
+        return graph.queryBridgeWords(from[i], afterNext[i]);
+    }
+
+    /**
+     * 根据桥接词改写一段文本.
+     *
+     * @return 生成的新文本.
+     */
+    @Benchmark
+    public String generateNewText() {
+        return graph.generateNewText(sentence);
+    }
+
+    /**
+     * 按节点计算点到点最短路径.
+     *
+     * @return 最短路径和距离.
+     */
+    @Benchmark
+    public Pair<List<Node>, Integer> dijkstra() {
+        int i = nextQuery();
+        return graph.dijkstra(fromNodes[i], afterNextNodes[i]);
+    }
+
+    /**
+     * 计算最短路径并导出高亮了路径的DOT文件.
+     *
+     * @return 查询结果.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String calcShortestPath() {
+        int i = nextQuery();
+        return graph.calcShortestPath(from[i], next[i]);
+    }
+
+    /**
+     * 随机游走，使用不需要交互的紧凑图版本.
+     *
+     * @return 依次访问的单词.
+     */
+    @Benchmark
+    public List<String> randomWalk() {
+        return compact.randomWalk(random);
+    }
+}
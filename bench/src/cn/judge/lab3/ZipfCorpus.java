@@ -0,0 +1,121 @@
+package cn.judge.lab3;
+
+import java.util.SplittableRandom;
+
+/**
+ * ZipfCorpus类生成服从Zipf分布的合成语料，供基准测试使用.
+ * 第r个常见的单词（r从1开始）出现的概率与1 / r^s成正比；
+ * 单词由排名按26进制编码为小写字母，因此同样的参数总是生成同样的语料.
+ */
+final class ZipfCorpus {
+    /**
+     * 词汇表大小.
+     */
+    private final int vocabulary;
+
+    /**
+     * 排名不超过r的单词的累计概率.
+     */
+    private final double[] cumulative;
+
+    /**
+     * 按排名存储的单词.
+     */
+    private final String[] words;
+
+    /**
+     * 构造一个语料生成器.
+     *
+     * @param vocabularySize 词汇表大小.
+     * @param exponent       Zipf分布的指数s，自然语言约为1.
+     */
+    ZipfCorpus(final int vocabularySize, final double exponent) {
+        this.vocabulary = vocabularySize;
+        this.cumulative = new double[vocabularySize];
+        this.words = new String[vocabularySize];
+        double total = 0;
+        for (int r = 0; r < vocabularySize; r++) {
+            total += 1.0 / Math.pow(r + 1, exponent);
+            cumulative[r] = total;
+            words[r] = word(r);
+        }
+        for (int r = 0; r < vocabularySize; r++) {
+            cumulative[r] /= total;
+        }
+    }
+
+    /**
+     * 获取词汇表大小.
+     *
+     * @return 词汇表大小.
+     */
+    int vocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * 获取指定排名的单词.
+     *
+     * @param rank 排名，从0开始.
+     * @return 单词.
+     */
+    String wordAt(final int rank) {
+        return words[rank];
+    }
+
+    /**
+     * 按Zipf分布抽取一个单词的排名.
+     *
+     * @param random 随机数生成器.
+     * @return 排名，从0开始.
+     */
+    int nextRank(final SplittableRandom random) {
+        double u = random.nextDouble();
+        int lo = 0;
+        int hi = vocabulary - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] < u) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 生成一段文本，单词之间用空格分隔，每隔若干单词插入标点和换行，
+     * 使构建图时的标点处理也被覆盖.
+     *
+     * @param length 单词数.
+     * @param seed   随机种子.
+     * @return 文本.
+     */
+    String text(final int length, final long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder text = new StringBuilder(length * 8);
+        for (int i = 0; i < length; i++) {
+            text.append(words[nextRank(random)]);
+            if (i % 16 == 15) {
+                text.append(".\n");
+            } else {
+                text.append(' ');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * 把排名编码为单词：0为"a"，25为"z"，26为"aa"，依此类推.
+     */
+    private static String word(final int rank) {
+        StringBuilder word = new StringBuilder();
+        int r = rank;
+        do {
+            word.append((char) ('a' + r % 26));
+            r = r / 26 - 1;
+        } while (r >= 0);
+        return word.reverse().toString();
+    }
+}
@@ -0,0 +1,358 @@
+package cn.judge.lab3;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * AllPairsExporter类批量计算所有单词对之间的最短距离并流式写入文件.
+ * 图较稠密且节点数较少时在整张距离矩阵上并行执行分块Floyd-Warshall算法；
+ * 否则按起点分批，每批起点在多个线程中各自执行一次单源搜索，
+ * 出队的距离超过截止距离时搜索即停止，结果按起点顺序写出，
+ * 内存占用只与批大小有关.
+ * 只输出不超过截止距离的单词对，起点到自身的距离不输出.
+ */
+final class AllPairsExporter {
+    /**
+     * 输出格式.
+     */
+    enum Format {
+        /**
+         * 文本格式，每行为"from,to,distance".
+         */
+        CSV,
+        /**
+         * 二进制格式：魔数、版本、单词表，之后每个起点依次写入
+         * 起点编号、单词对数量和若干(终点编号, 距离).
+         */
+        BINARY
+    }
+
+    /**
+     * 二进制格式的魔数.
+     */
+    static final int MAGIC = 0x41505350;
+
+    /**
+     * 二进制格式的版本号.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * 节点数超过该值时不使用Floyd-Warshall算法，距离矩阵太大.
+     */
+    static final int FLOYD_WARSHALL_LIMIT = 2048;
+
+    /**
+     * 单源搜索中处理一条边的代价相当于Floyd-Warshall内层循环的次数.
+     * Floyd-Warshall的代价为n^3，逐个起点搜索约为n(n + m)乘以该值.
+     */
+    static final int EDGE_COST = 8;
+
+    /**
+     * Floyd-Warshall分块的边长.
+     */
+    private static final int BLOCK = 64;
+
+    /**
+     * 矩阵中表示不可达的值，两个相加也不会溢出.
+     */
+    private static final int INF = Integer.MAX_VALUE / 2;
+
+    /**
+     * 每个线程每批处理的起点数.
+     */
+    private static final int SOURCES_PER_THREAD = 16;
+
+    /**
+     * 输出缓冲区大小.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * 紧凑图.
+     */
+    private final CompactGraph graph;
+
+    /**
+     * 并行线程数.
+     */
+    private final int parallelism;
+
+    /**
+     * 截止距离，超过它的单词对不输出.
+     */
+    private final int cutoff;
+
+    /**
+     * 构造一个导出器.
+     *
+     * @param compact  紧凑图.
+     * @param threads  并行线程数.
+     * @param maxDistance 截止距离，小于0表示不限制.
+     */
+    AllPairsExporter(final CompactGraph compact, final int threads,
+                     final int maxDistance) {
+        this.graph = compact;
+        this.parallelism = threads;
+        this.cutoff = maxDistance < 0 ? INF - 1 : maxDistance;
+    }
+
+    /**
+     * 计算并导出所有单词对之间的最短距离.
+     *
+     * @param path   输出文件路径.
+     * @param format 输出格式.
+     * @return 写出的单词对数量.
+     * @throws IOException 写入失败时抛出.
+     */
+    long export(final Path path, final Format format) throws IOException {
+        return export(path, format, prefersMatrix());
+    }
+
+    /**
+     * 计算并导出所有单词对之间的最短距离，并指定算法.
+     * 两种算法的输出完全相同.
+     *
+     * @param path   输出文件路径.
+     * @param format 输出格式.
+     * @param matrix 为true时使用Floyd-Warshall算法，否则逐个起点搜索.
+     * @return 写出的单词对数量.
+     * @throws IOException 写入失败时抛出.
+     */
+    long export(final Path path, final Format format, final boolean matrix)
+            throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(path), BUFFER_SIZE)) {
+            writeHeader(out, format);
+            if (matrix) {
+                return exportMatrix(out, format, pool);
+            }
+            return exportBySource(out, format, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 按估计的代价选择算法：只有节点数不大、图足够稠密时
+     * Floyd-Warshall才比逐个起点搜索快.
+     *
+     * @return 应使用Floyd-Warshall算法时返回true.
+     */
+    boolean prefersMatrix() {
+        long n = graph.nodeCount();
+        return n <= FLOYD_WARSHALL_LIMIT
+                && n * n <= EDGE_COST * (n + graph.edgeCount());
+    }
+
+    private void writeHeader(final OutputStream out, final Format format)
+            throws IOException {
+        if (format == Format.CSV) {
+            out.write("from,to,distance\n".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(graph.nodeCount());
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            data.writeUTF(graph.word(v));
+        }
+        data.flush();
+    }
+
+    private long exportBySource(final OutputStream out, final Format format,
+                                final ForkJoinPool pool) throws IOException {
+        int n = graph.nodeCount();
+        int batch = parallelism * SOURCES_PER_THREAD;
+        byte[][] rows = new byte[batch][];
+        long[] counts = new long[batch];
+        long total = 0;
+        for (int first = 0; first < n; first += batch) {
+            int start = first;
+            int end = Math.min(n, first + batch);
+            pool.submit(() -> IntStream.range(start, end).parallel()
+                    .forEach(source -> {
+                        PathEngine engine = graph.borrowEngine();
+                        RowWriter row = new RowWriter(format, source);
+                        try {
+                            engine.search(source, -1, cutoff);
+                            for (int v = 0; v < n; v++) {
+                                int d = engine.distance(v);
+                                if (v != source && d <= cutoff) {
+                                    row.add(v, d);
+                                }
+                            }
+                        } finally {
+                            graph.releaseEngine(engine);
+                        }
+                        rows[source - start] = row.toBytes();
+                        counts[source - start] = row.count();
+                    })).join();
+            for (int i = 0; i < end - start; i++) {
+                out.write(rows[i]);
+                total += counts[i];
+                rows[i] = null;
+            }
+        }
+        return total;
+    }
+
+    private long exportMatrix(final OutputStream out, final Format format,
+                              final ForkJoinPool pool) throws IOException {
+        int n = graph.nodeCount();
+        int[] dist = new int[n * n];
+        Arrays.fill(dist, INF);
+        for (int u = 0; u < n; u++) {
+            dist[u * n + u] = 0;
+            for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                int v = graph.target(e);
+                dist[u * n + v] = Math.min(dist[u * n + v], graph.weight(e));
+            }
+        }
+        floydWarshall(dist, n, pool);
+        long total = 0;
+        for (int u = 0; u < n; u++) {
+            RowWriter row = new RowWriter(format, u);
+            for (int v = 0; v < n; v++) {
+                int d = dist[u * n + v];
+                if (v != u && d <= cutoff) {
+                    row.add(v, d);
+                }
+            }
+            out.write(row.toBytes());
+            total += row.count();
+        }
+        return total;
+    }
+
+    /**
+     * 分块Floyd-Warshall：每一轮先更新对角块，再并行更新同行、同列的块，
+     * 最后并行更新其余所有块.
+     */
+    private static void floydWarshall(final int[] dist, final int n,
+                                      final ForkJoinPool pool) {
+        int blocks = (n + BLOCK - 1) / BLOCK;
+        for (int kb = 0; kb < blocks; kb++) {
+            int k = kb;
+            updateBlock(dist, n, k, k, k);
+            pool.submit(() -> IntStream.range(0, blocks).parallel()
+                    .filter(b -> b != k)
+                    .forEach(b -> {
+                        updateBlock(dist, n, k, k, b);
+                        updateBlock(dist, n, k, b, k);
+                    })).join();
+            pool.submit(() -> IntStream.range(0, blocks * blocks).parallel()
+                    .filter(ij -> ij / blocks != k && ij % blocks != k)
+                    .forEach(ij -> updateBlock(dist, n, k,
+                            ij / blocks, ij % blocks))).join();
+        }
+    }
+
+    private static void updateBlock(final int[] dist, final int n,
+                                    final int kb, final int ib,
+                                    final int jb) {
+        int kEnd = Math.min(n, (kb + 1) * BLOCK);
+        int iEnd = Math.min(n, (ib + 1) * BLOCK);
+        int jEnd = Math.min(n, (jb + 1) * BLOCK);
+        for (int k = kb * BLOCK; k < kEnd; k++) {
+            for (int i = ib * BLOCK; i < iEnd; i++) {
+                int dik = dist[i * n + k];
+                if (dik == INF) {
+                    continue;
+                }
+                int row = i * n;
+                int krow = k * n;
+                for (int j = jb * BLOCK; j < jEnd; j++) {
+                    int through = dik + dist[krow + j];
+                    if (through < dist[row + j]) {
+                        dist[row + j] = through;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 把一个起点的所有结果编码为字节.
+     */
+    private final class RowWriter {
+        /**
+         * 输出格式.
+         */
+        private final Format format;
+
+        /**
+         * 起点编号.
+         */
+        private final int source;
+
+        /**
+         * CSV格式的文本.
+         */
+        private final StringBuilder text = new StringBuilder();
+
+        /**
+         * 二进制格式的(终点, 距离)对.
+         */
+        private int[] pairs = new int[16];
+
+        /**
+         * 已加入的单词对数量.
+         */
+        private int size;
+
+        RowWriter(final Format rowFormat, final int sourceId) {
+            this.format = rowFormat;
+            this.source = sourceId;
+        }
+
+        void add(final int target, final int distance) {
+            if (format == Format.CSV) {
+                text.append(graph.word(source)).append(',')
+                        .append(graph.word(target)).append(',')
+                        .append(distance).append('\n');
+            } else {
+                if (2 * size + 2 > pairs.length) {
+                    pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                }
+                pairs[2 * size] = target;
+                pairs[2 * size + 1] = distance;
+            }
+            size++;
+        }
+
+        long count() {
+            return size;
+        }
+
+        byte[] toBytes() {
+            if (format == Format.CSV) {
+                return text.toString().getBytes(StandardCharsets.UTF_8);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    8 + 8 * size);
+            try (DataOutputStream data = new DataOutputStream(bytes)) {
+                data.writeInt(source);
+                data.writeInt(size);
+                for (int i = 0; i < 2 * size; i++) {
+                    data.writeInt(pairs[i]);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package cn.judge.lab3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BridgeIndex类是桥接词查询的两跳索引.
+ * 从word1到word2的桥接词就是word1的后继集合与word2的前驱集合的交集.
+ * 索引为每个节点保存按编号排序的后继数组，与紧凑图中按编号排序的
+ * 入边数组配合，查询时用倍增
+ * （galloping）方式求交集；对前驱特别多的枢纽词（如"the"）改用位图，
+ * 只需逐个检查word1的后继.
+ */
+final class BridgeIndex {
+    /**
+     * 前驱数不少于该值且超过节点数的1/32时才使用位图.
+     */
+    static final int MIN_HUB_IN_DEGREE = 64;
+
+    /**
+     * 被索引的紧凑图.
+     */
+    private final CompactGraph graph;
+
+    /**
+     * 排序后的后继数组，与紧凑图共用offsets的划分.
+     */
+    private final int[] sortedOut;
+
+    /**
+     * sortedOut中每个后继在原邻接列表中的位置.
+     */
+    private final int[] outRank;
+
+    /**
+     * 枢纽词的前驱位图，非枢纽词为null.
+     */
+    private final long[][] hubBits;
+
+    /**
+     * 紧凑图中按源节点编号排序的入边数组（共享，不复制）.
+     */
+    private final int[] inSources;
+
+    /**
+     * 为紧凑图构建桥接词索引.
+     *
+     * @param compact 紧凑图.
+     */
+    BridgeIndex(final CompactGraph compact) {
+        this.graph = compact;
+        this.inSources = compact.inSources();
+        int n = compact.nodeCount();
+        int m = compact.edgeCount();
+        sortedOut = new int[m];
+        outRank = new int[m];
+        long[] packed = new long[0];
+        for (int u = 0; u < n; u++) {
+            int start = compact.edgeStart(u);
+            int degree = compact.outDegree(u);
+            if (packed.length < degree) {
+                packed = new long[degree];
+            }
+            for (int i = 0; i < degree; i++) {
+                int v = compact.target(start + i);
+                packed[i] = ((long) v << 32) | i;
+            }
+            Arrays.sort(packed, 0, degree);
+            for (int i = 0; i < degree; i++) {
+                sortedOut[start + i] = (int) (packed[i] >>> 32);
+                outRank[start + i] = (int) packed[i];
+            }
+        }
+        hubBits = new long[n][];
+        for (int v = 0; v < n; v++) {
+            int inDegree = compact.inDegree(v);
+            if (inDegree >= MIN_HUB_IN_DEGREE && inDegree * 32L >= n) {
+                long[] bits = new long[(n + 63) >>> 6];
+                for (int i = compact.inEdgeStart(v);
+                     i < compact.inEdgeEnd(v); i++) {
+                    int u = compact.source(i);
+                    bits[u >>> 6] |= 1L << u;
+                }
+                hubBits[v] = bits;
+            }
+        }
+    }
+
+    /**
+     * 获取被索引的紧凑图.
+     *
+     * @return 紧凑图.
+     */
+    CompactGraph graph() {
+        return graph;
+    }
+
+    /**
+     * 查询桥接词编号，结果按word1邻接列表中的顺序写入out.
+     *
+     * @param from 第一个单词的编号.
+     * @param to   第二个单词的编号.
+     * @param out  输出数组，长度至少为from的出度.
+     * @return 桥接词数量.
+     */
+    int collect(final int from, final int to, final int[] out) {
+        int start = graph.edgeStart(from);
+        int end = graph.edgeEnd(from);
+        int count = 0;
+        long[] bits = hubBits[to];
+        if (bits != null) {
+            for (int e = start; e < end; e++) {
+                int mid = graph.target(e);
+                if ((bits[mid >>> 6] & (1L << mid)) != 0) {
+                    out[count++] = mid;
+                }
+            }
+            return count;
+        }
+        // 两个有序数组求交集，记录交集元素在原邻接列表中的位置
+        int i = start;
+        int j = graph.inEdgeStart(to);
+        int inEnd = graph.inEdgeEnd(to);
+        while (i < end && j < inEnd) {
+            int a = sortedOut[i];
+            int b = inSources[j];
+            if (a == b) {
+                out[count++] = outRank[i];
+                i++;
+                j++;
+            } else if (a < b) {
+                i = gallop(sortedOut, i + 1, end, b);
+            } else {
+                j = gallop(inSources, j + 1, inEnd, a);
+            }
+        }
+        Arrays.sort(out, 0, count);
+        for (int k = 0; k < count; k++) {
+            out[k] = graph.target(start + out[k]);
+        }
+        return count;
+    }
+
+    /**
+     * 查询桥接词.
+     *
+     * @param from 第一个单词的编号.
+     * @param to   第二个单词的编号.
+     * @return 按word1邻接列表顺序排列的桥接词.
+     */
+    List<String> bridgeWords(final int from, final int to) {
+        int[] ids = new int[graph.outDegree(from)];
+        int count = collect(from, to, ids);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(graph.word(ids[i]));
+        }
+        return result;
+    }
+
+    /**
+     * 估算索引占用的内存字节数，不含紧凑图本身（包括其入边数组）.
+     *
+     * @return 字节数.
+     */
+    long memoryBytes() {
+        long bytes = 4L * (sortedOut.length + outRank.length);
+        for (long[] bits : hubBits) {
+            bytes += bits == null ? 0 : 8L * bits.length;
+        }
+        // 位图引用数组本身
+        return bytes + 8L * hubBits.length;
+    }
+
+    /**
+     * 在有序数组的[from, to)中找到第一个不小于key的位置.
+     */
+    private static int gallop(final int[] a, final int from, final int to,
+                              final int key) {
+        int lo = from;
+        int step = 1;
+        int hi = from;
+        while (hi < to && a[hi] < key) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, to);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
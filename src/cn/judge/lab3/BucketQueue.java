@@ -0,0 +1,164 @@
+package cn.judge.lab3;
+
+import java.util.Arrays;
+
+/**
+ * BucketQueue类是整数键的Dial桶式优先队列.
+ * 边权都是较小的正整数（相邻次数），队列中任意时刻的键都落在
+ * [当前最小键, 当前最小键 + 最大边权]的范围内，因此用最大边权加1个
+ * 循环桶即可；每个桶是以节点编号串起的双向链表，支持O(1)的降键操作.
+ * 所有数组在构造时分配，重复使用时不再分配内存.
+ */
+final class BucketQueue {
+    /**
+     * 空链表或不在队列中的标记.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * 每个桶的链表头.
+     */
+    private final int[] heads;
+
+    /**
+     * 节点在桶链表中的后继.
+     */
+    private final int[] next;
+
+    /**
+     * 节点在桶链表中的前驱.
+     */
+    private final int[] prev;
+
+    /**
+     * 节点当前的键.
+     */
+    private final int[] keys;
+
+    /**
+     * 节点所在的桶，不在队列中时为NONE.
+     */
+    private final int[] bucketOf;
+
+    /**
+     * 队列中的节点数量.
+     */
+    private int size;
+
+    /**
+     * 最近一次弹出的键，下一个最小键不会小于它.
+     */
+    private int cursor;
+
+    /**
+     * 构造一个桶式优先队列.
+     *
+     * @param nodeCount 节点数量.
+     * @param keySpan   队列中最大键与最小键之差的上界.
+     */
+    BucketQueue(final int nodeCount, final int keySpan) {
+        heads = new int[keySpan + 1];
+        next = new int[nodeCount];
+        prev = new int[nodeCount];
+        keys = new int[nodeCount];
+        bucketOf = new int[nodeCount];
+        Arrays.fill(heads, NONE);
+        Arrays.fill(bucketOf, NONE);
+    }
+
+    /**
+     * 判断队列是否为空.
+     *
+     * @return 为空时返回true.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 插入节点，节点已在队列中时把它的键改为key.
+     *
+     * @param node 节点编号.
+     * @param key  新的键，不小于最近一次弹出的键.
+     */
+    void push(final int node, final int key) {
+        if (bucketOf[node] != NONE) {
+            unlink(node);
+        }
+        int bucket = key % heads.length;
+        keys[node] = key;
+        bucketOf[node] = bucket;
+        prev[node] = NONE;
+        next[node] = heads[bucket];
+        if (heads[bucket] != NONE) {
+            prev[heads[bucket]] = node;
+        }
+        heads[bucket] = node;
+        size++;
+    }
+
+    /**
+     * 获取队列中的最小键，队列为空时的结果无意义.
+     *
+     * @return 最小键.
+     */
+    int peekKey() {
+        while (heads[cursor % heads.length] == NONE) {
+            cursor++;
+        }
+        return cursor;
+    }
+
+    /**
+     * 弹出键最小的节点.
+     *
+     * @return 节点编号.
+     */
+    int pop() {
+        int node = heads[peekKey() % heads.length];
+        unlink(node);
+        return node;
+    }
+
+    /**
+     * 获取节点入队时的键.
+     *
+     * @param node 节点编号.
+     * @return 键.
+     */
+    int key(final int node) {
+        return keys[node];
+    }
+
+    /**
+     * 清空队列并把起始键重置为0.
+     * 队列已空时耗时为O(1)，否则与桶数和剩余节点数成正比.
+     */
+    void clear() {
+        cursor = 0;
+        if (size == 0) {
+            return;
+        }
+        for (int b = 0; b < heads.length; b++) {
+            for (int node = heads[b]; node != NONE; node = next[node]) {
+                bucketOf[node] = NONE;
+            }
+            heads[b] = NONE;
+        }
+        size = 0;
+    }
+
+    private void unlink(final int node) {
+        int bucket = bucketOf[node];
+        if (prev[node] != NONE) {
+            next[prev[node]] = next[node];
+        } else {
+            heads[bucket] = next[node];
+        }
+        if (next[node] != NONE) {
+            prev[next[node]] = prev[node];
+        }
+        bucketOf[node] = NONE;
+        size--;
+    }
+}
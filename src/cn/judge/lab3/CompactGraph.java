@@ -0,0 +1,501 @@
+package cn.judge.lab3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * CompactGraph类是DirectedGraph冻结后的只读紧凑表示.
+ * 单词被驻留为稠密的整数编号，边以压缩稀疏行（CSR）格式存放在
+ * offsets/targets/weights三个int数组中；每个节点的出边保持原图中
+ * 邻接列表的插入顺序，因此查询结果与DirectedGraph一致.
+ */
+final class CompactGraph {
+    /**
+     * 单词表，编号即节点编号.
+     */
+    private final WordTable words;
+
+    /**
+     * 节点u的出边位于targets[offsets[u]]到targets[offsets[u + 1] - 1].
+     */
+    private final int[] offsets;
+
+    /**
+     * 每条边的目标节点编号.
+     */
+    private final int[] targets;
+
+    /**
+     * 每条边的权重（相邻次数）.
+     */
+    private final int[] weights;
+
+    /**
+     * 节点v的入边位于inSources[inOffsets[v]]到inSources[inOffsets[v + 1] - 1]，
+     * 同一节点的入边按源节点编号递增排列.
+     */
+    private final int[] inOffsets;
+
+    /**
+     * 每条入边的源节点编号.
+     */
+    private final int[] inSources;
+
+    /**
+     * 每条入边的权重.
+     */
+    private final int[] inWeights;
+
+    /**
+     * 最大边权，至少为1.
+     */
+    private final int maxWeight;
+
+    /**
+     * 冻结时原图的版本号.
+     */
+    private final long version;
+
+    /**
+     * 复用的最短路径搜索引擎，不绑定线程.
+     */
+    private final ScratchPool<PathEngine> engines = new ScratchPool<>(
+            () -> new PathEngine(this), ScratchPool.DEFAULT_MAX_IDLE);
+
+    /**
+     * 可达性索引，第一次需要时构建.
+     */
+    private volatile ReachabilityIndex reachability;
+
+    /**
+     * 按边权随机游走的别名表，第一次需要时构建.
+     */
+    private volatile WalkGenerator walks;
+
+    /**
+     * 用给定的CSR数组构造紧凑图.
+     *
+     * @param wordTable  单词表.
+     * @param edgeOffsets 每个节点出边的起始下标，长度为节点数加1.
+     * @param edgeTargets 每条边的目标节点编号.
+     * @param edgeWeights 每条边的权重.
+     */
+    CompactGraph(final WordTable wordTable, final int[] edgeOffsets,
+                 final int[] edgeTargets, final int[] edgeWeights) {
+        this(wordTable, edgeOffsets, edgeTargets, edgeWeights, 0);
+    }
+
+    /**
+     * 用给定的CSR数组构造紧凑图，并记录原图的版本号.
+     *
+     * @param wordTable  单词表.
+     * @param edgeOffsets 每个节点出边的起始下标，长度为节点数加1.
+     * @param edgeTargets 每条边的目标节点编号.
+     * @param edgeWeights 每条边的权重.
+     * @param graphVersion 冻结时原图的版本号.
+     */
+    CompactGraph(final WordTable wordTable, final int[] edgeOffsets,
+                 final int[] edgeTargets, final int[] edgeWeights,
+                 final long graphVersion) {
+        this.version = graphVersion;
+        this.words = wordTable;
+        this.offsets = edgeOffsets;
+        this.targets = edgeTargets;
+        this.weights = edgeWeights;
+        int max = 1;
+        for (int w : edgeWeights) {
+            max = Math.max(max, w);
+        }
+        this.maxWeight = max;
+        int n = nodeCount();
+        inOffsets = new int[n + 1];
+        inSources = new int[edgeTargets.length];
+        inWeights = new int[edgeTargets.length];
+        for (int v : edgeTargets) {
+            inOffsets[v + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        // 按源节点编号递增的顺序填充，每个节点的入边自然有序
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        for (int u = 0; u < n; u++) {
+            for (int e = edgeOffsets[u]; e < edgeOffsets[u + 1]; e++) {
+                int slot = fill[edgeTargets[e]]++;
+                inSources[slot] = u;
+                inWeights[slot] = edgeWeights[e];
+            }
+        }
+    }
+
+    /**
+     * 获取冻结时原图的版本号.
+     *
+     * @return 版本号.
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * 获取节点数量.
+     *
+     * @return 节点数量.
+     */
+    int nodeCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * 获取边数量.
+     *
+     * @return 边数量.
+     */
+    int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * 估计紧凑图占用的内存，包括正反两份CSR数组和单词表.
+     *
+     * @return 字节数.
+     */
+    long memoryBytes() {
+        long arrays = 4L * (offsets.length + targets.length + weights.length
+                + inOffsets.length + inSources.length + inWeights.length);
+        return arrays + words.memoryBytes();
+    }
+
+    /**
+     * 查找单词对应的节点编号.
+     *
+     * @param word 单词.
+     * @return 节点编号，不存在时返回-1.
+     */
+    int id(final String word) {
+        return words.find(word);
+    }
+
+    /**
+     * 获取节点编号对应的单词.
+     *
+     * @param id 节点编号.
+     * @return 单词.
+     */
+    String word(final int id) {
+        return words.word(id);
+    }
+
+    /**
+     * 获取单词表.
+     *
+     * @return 单词表.
+     */
+    WordTable words() {
+        return words;
+    }
+
+    /**
+     * 获取节点第一条出边的下标.
+     *
+     * @param id 节点编号.
+     * @return 出边起始下标.
+     */
+    int edgeStart(final int id) {
+        return offsets[id];
+    }
+
+    /**
+     * 获取节点最后一条出边之后的下标.
+     *
+     * @param id 节点编号.
+     * @return 出边结束下标（不含）.
+     */
+    int edgeEnd(final int id) {
+        return offsets[id + 1];
+    }
+
+    /**
+     * 获取边的目标节点.
+     *
+     * @param edge 边下标.
+     * @return 目标节点编号.
+     */
+    int target(final int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * 获取边的权重.
+     *
+     * @param edge 边下标.
+     * @return 边权重.
+     */
+    int weight(final int edge) {
+        return weights[edge];
+    }
+
+    /**
+     * 获取节点第一条入边的下标.
+     *
+     * @param id 节点编号.
+     * @return 入边起始下标.
+     */
+    int inEdgeStart(final int id) {
+        return inOffsets[id];
+    }
+
+    /**
+     * 获取节点最后一条入边之后的下标.
+     *
+     * @param id 节点编号.
+     * @return 入边结束下标（不含）.
+     */
+    int inEdgeEnd(final int id) {
+        return inOffsets[id + 1];
+    }
+
+    /**
+     * 获取入边的源节点.
+     *
+     * @param inEdge 入边下标.
+     * @return 源节点编号.
+     */
+    int source(final int inEdge) {
+        return inSources[inEdge];
+    }
+
+    /**
+     * 获取全部入边的源节点数组，调用方不得修改.
+     *
+     * @return 入边源节点数组.
+     */
+    int[] inSources() {
+        return inSources;
+    }
+
+    /**
+     * 获取入边的权重.
+     *
+     * @param inEdge 入边下标.
+     * @return 边权重.
+     */
+    int inWeight(final int inEdge) {
+        return inWeights[inEdge];
+    }
+
+    /**
+     * 获取节点的入度.
+     *
+     * @param id 节点编号.
+     * @return 入度.
+     */
+    int inDegree(final int id) {
+        return inOffsets[id + 1] - inOffsets[id];
+    }
+
+    /**
+     * 获取最大边权.
+     *
+     * @return 最大边权，没有边时为1.
+     */
+    int maxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * 借出一个最短路径搜索引擎，没有空闲的引擎时新建.
+     * 引擎在归还之前只能由借用方使用.
+     *
+     * @return 搜索引擎，用完后应调用releaseEngine归还.
+     */
+    PathEngine borrowEngine() {
+        return engines.borrow();
+    }
+
+    /**
+     * 归还借出的搜索引擎.
+     *
+     * @param engine 搜索引擎.
+     */
+    void releaseEngine(final PathEngine engine) {
+        engines.release(engine);
+    }
+
+    /**
+     * 获取累计创建的搜索引擎数，用于观察引擎是否被复用.
+     *
+     * @return 引擎数.
+     */
+    int enginesCreated() {
+        return engines.createdCount();
+    }
+
+    /**
+     * 获取可达性索引，第一次调用时构建.
+     * 多个线程同时第一次调用时可能各自构建一次，结果相同.
+     *
+     * @return 可达性索引.
+     */
+    ReachabilityIndex reachability() {
+        ReachabilityIndex index = reachability;
+        if (index == null) {
+            index = new ReachabilityIndex(this);
+            reachability = index;
+        }
+        return index;
+    }
+
+    /**
+     * 获取按边权随机游走的别名表，第一次调用时构建.
+     * 多个线程同时第一次调用时可能各自构建一次，结果相同.
+     *
+     * @return 随机游走生成器.
+     */
+    WalkGenerator walkGenerator() {
+        WalkGenerator generator = walks;
+        if (generator == null) {
+            generator = new WalkGenerator(this);
+            walks = generator;
+        }
+        return generator;
+    }
+
+    /**
+     * 判断两个单词之间是否存在路径.
+     *
+     * @param start 起始单词
+     * @param end   结束单词
+     * @return 两个单词都在图中且存在路径时返回true
+     */
+    boolean isReachable(final String start, final String end) {
+        int source = id(start);
+        int target = id(end);
+        return source >= 0 && target >= 0
+                && reachability().reachable(source, target);
+    }
+
+    /**
+     * 获取节点的出度.
+     *
+     * @param id 节点编号.
+     * @return 出度.
+     */
+    int outDegree(final int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+
+    /**
+     * 判断是否存在从from到to的边.
+     *
+     * @param from 源节点编号.
+     * @param to   目标节点编号.
+     * @return 存在时返回true.
+     */
+    boolean hasEdge(final int from, final int to) {
+        for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+            if (targets[e] == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 查询两个单词之间的桥接词.
+     *
+     * @param word1 第一个单词
+     * @param word2 第二个单词
+     * @return 桥接词的字符串表示
+     */
+    String queryBridgeWords(final String word1, final String word2) {
+        int from = id(word1);
+        int to = id(word2);
+        String missing = DirectedGraph.missingWordsMessage(
+                word1, from >= 0, word2, to >= 0);
+        if (missing != null) {
+            return missing;
+        }
+        List<String> bridgeWords = new ArrayList<>();
+        for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+            if (hasEdge(targets[e], to)) {
+                bridgeWords.add(word(targets[e]));
+            }
+        }
+        return DirectedGraph.bridgeWordsMessage(word1, word2, bridgeWords);
+    }
+
+    /**
+     * 计算两个单词之间的最短路径.
+     *
+     * @param start 起始单词
+     * @param end   结束单词
+     * @return 最短路径上的单词和最短距离，没有路径时为(null, -1)
+     */
+    Pair<List<String>, Integer> dijkstra(final String start,
+                                         final String end) {
+        int source = id(start);
+        int target = id(end);
+        if (source < 0 || target < 0
+                || !reachability().reachable(source, target)) {
+            return new Pair<>(null, -1);
+        }
+        PathEngine engine = borrowEngine();
+        try {
+            GraphEvents.PathSearch event = new GraphEvents.PathSearch();
+            event.begin();
+            int distance = engine.bidirectional(source, target);
+            GraphEvents.commit(event, "bidirectional", engine,
+                    source, target, distance);
+            if (distance == PathEngine.UNREACHABLE) {
+                return new Pair<>(null, -1);
+            }
+            int[] ids = new int[engine.pathLength()];
+            engine.copyPath(ids);
+            List<String> path = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                path.add(word(id));
+            }
+            return new Pair<>(path, distance);
+        } finally {
+            releaseEngine(engine);
+        }
+    }
+
+    /**
+     * 计算从一个单词出发到所有单词的最短路径树.
+     *
+     * @param start 起始单词
+     * @return 最短路径树，单词不在图中时返回null
+     */
+    ShortestPathTree shortestPathTree(final String start) {
+        int source = id(start);
+        if (source < 0) {
+            return null;
+        }
+        PathEngine engine = borrowEngine();
+        try {
+            GraphEvents.PathSearch event = new GraphEvents.PathSearch();
+            event.begin();
+            engine.search(source);
+            GraphEvents.commit(event, "dijkstra", engine, source, -1,
+                    PathEngine.UNREACHABLE);
+            return engine.toTree(source);
+        } finally {
+            releaseEngine(engine);
+        }
+    }
+
+    /**
+     * 按边权随机游走，遇到没有出边的节点或重复访问的节点时停止.
+     * 下一个单词被选中的概率与边权成正比，使用缓存的别名表.
+     *
+     * @param random 随机数生成器
+     * @return 依次访问的单词
+     */
+    List<String> randomWalk(final Random random) {
+        return walkGenerator().randomWalk(random);
+    }
+}
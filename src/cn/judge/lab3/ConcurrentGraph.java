@@ -0,0 +1,238 @@
+package cn.judge.lab3;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ConcurrentGraph类让多个线程在图持续追加文本的同时并发查询.
+ * 写入方在锁内修改底层的DirectedGraph，攒够一批修改后把图冻结为
+ * 不可变的紧凑图，连同桥接词索引一起通过volatile引用原子地发布.
+ * 读取方只读取已发布的快照，不加任何锁，每次查询看到的都是某一时刻
+ * 完整一致的图，读吞吐量随核数增长.
+ * 桥接词和点到点最短路径的结果按快照版本缓存，发布新快照后旧结果自动失效.
+ */
+final class ConcurrentGraph {
+    /**
+     * 默认每积累多少次修改自动发布一次快照.
+     */
+    static final long DEFAULT_PUBLISH_EVERY = 1 << 16;
+
+    /**
+     * 底层的可变图，只在持有writeLock时访问.
+     */
+    private final DirectedGraph graph;
+
+    /**
+     * 写入方之间互斥的锁.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * 每积累多少次修改自动发布一次快照.
+     */
+    private final long publishEvery;
+
+    /**
+     * 最近发布的快照，桥接词索引中包含对应的紧凑图.
+     */
+    private volatile BridgeIndex published;
+
+    /**
+     * 桥接词查询结果的缓存.
+     */
+    private final QueryCache<String> bridgeWordsCache = new QueryCache<>(
+            QueryCache.DEFAULT_MAX_ENTRIES, QueryCache.DEFAULT_MAX_BYTES,
+            QueryCache::stringBytes);
+
+    /**
+     * 点到点最短路径的缓存.
+     */
+    private final QueryCache<Pair<List<String>, Integer>> pathCache =
+            new QueryCache<>(QueryCache.DEFAULT_MAX_ENTRIES,
+                    QueryCache.DEFAULT_MAX_BYTES, ConcurrentGraph::pathBytes);
+
+    /**
+     * 包装一个图并立即发布它的第一个快照.
+     *
+     * @param directedGraph 底层的图，之后不应再被直接修改.
+     * @param every         每积累多少次修改自动发布一次快照.
+     */
+    ConcurrentGraph(final DirectedGraph directedGraph, final long every) {
+        this.graph = directedGraph;
+        this.publishEvery = every;
+        writeLock.lock();
+        try {
+            publishLocked();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 包装一个图，使用默认的发布间隔.
+     *
+     * @param directedGraph 底层的图.
+     */
+    ConcurrentGraph(final DirectedGraph directedGraph) {
+        this(directedGraph, DEFAULT_PUBLISH_EVERY);
+    }
+
+    /**
+     * 追加文本，积累的修改达到发布间隔时发布新的快照.
+     *
+     * @param text 追加的文本.
+     * @return 追加后尚未发布的修改数，为0时追加的文本已经可以查询.
+     */
+    long append(final String text) {
+        writeLock.lock();
+        try {
+            graph.appendText(text);
+            long pending = graph.version() - published.graph().version();
+            if (pending >= publishEvery) {
+                publishLocked();
+                return 0;
+            }
+            return pending;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 立即发布包含所有已追加文本的快照.
+     */
+    void publish() {
+        writeLock.lock();
+        try {
+            if (graph.version() != published.graph().version()) {
+                publishLocked();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void publishLocked() {
+        published = new BridgeIndex(graph.freeze());
+    }
+
+    /**
+     * 获取最近发布的快照，不加锁.
+     *
+     * @return 不可变的紧凑图.
+     */
+    CompactGraph snapshot() {
+        return published.graph();
+    }
+
+    /**
+     * 在最近发布的快照上查询两个单词之间的桥接词.
+     *
+     * @param word1 第一个单词.
+     * @param word2 第二个单词.
+     * @return 桥接词的字符串表示.
+     */
+    String queryBridgeWords(final String word1, final String word2) {
+        BridgeIndex index = published;
+        CompactGraph compact = index.graph();
+        String cached = bridgeWordsCache.get(compact.version(), word1, word2);
+        if (cached != null) {
+            return cached;
+        }
+        int from = compact.id(word1);
+        int to = compact.id(word2);
+        String message = DirectedGraph.missingWordsMessage(
+                word1, from >= 0, word2, to >= 0);
+        if (message == null) {
+            message = DirectedGraph.bridgeWordsMessage(
+                    word1, word2, index.bridgeWords(from, to));
+        }
+        bridgeWordsCache.put(compact.version(), word1, word2, message);
+        return message;
+    }
+
+    /**
+     * 在最近发布的快照上计算两个单词之间的最短路径.
+     *
+     * @param word1 起始单词.
+     * @param word2 结束单词.
+     * @return 最短路径上的单词和最短距离，没有路径时为(null, -1).
+     */
+    Pair<List<String>, Integer> shortestPath(final String word1,
+                                             final String word2) {
+        CompactGraph compact = published.graph();
+        Pair<List<String>, Integer> path =
+                pathCache.get(compact.version(), word1, word2);
+        if (path == null) {
+            path = compact.dijkstra(word1, word2);
+            pathCache.put(compact.version(), word1, word2, path);
+        }
+        return path;
+    }
+
+    /**
+     * 在最近发布的快照上判断两个单词之间是否存在路径.
+     *
+     * @param word1 起始单词.
+     * @param word2 结束单词.
+     * @return 两个单词都在快照中且存在路径时返回true.
+     */
+    boolean isReachable(final String word1, final String word2) {
+        return published.graph().isReachable(word1, word2);
+    }
+
+    /**
+     * 获取查询缓存的统计信息.
+     *
+     * @return 桥接词缓存和最短路径缓存的统计，各占一行.
+     */
+    String cacheStatistics() {
+        return "bridge words: " + bridgeWordsCache.statistics()
+                + "\nshortest paths: " + pathCache.statistics();
+    }
+
+    /**
+     * 估计一条缓存的路径占用的字节数，单词字符串与快照共享，不计入.
+     */
+    private static long pathBytes(final Pair<List<String>, Integer> path) {
+        List<String> words = path.getFirst();
+        return 64 + (words == null ? 0 : 8L * words.size());
+    }
+
+    /**
+     * 在最近发布的快照上计算从一个单词出发的最短路径树.
+     *
+     * @param word 起始单词.
+     * @return 最短路径树，单词不在快照中时返回null.
+     */
+    ShortestPathTree shortestPathsFrom(final String word) {
+        return published.graph().shortestPathTree(word);
+    }
+
+    /**
+     * 在最近发布的快照上根据桥接词流式改写文本.
+     *
+     * @param in   输入的文本.
+     * @param out  生成的新文本.
+     * @param seed 随机种子.
+     * @throws IOException 读写失败时抛出.
+     */
+    void generateNewText(final Reader in, final Writer out, final long seed)
+            throws IOException {
+        new TextGenerator(published).generate(in, out, seed);
+    }
+
+    /**
+     * 在最近发布的快照上按边权随机游走，别名表随快照缓存.
+     *
+     * @param random 随机数生成器.
+     * @return 依次访问的单词.
+     */
+    List<String> randomWalk(final Random random) {
+        return published.graph().randomWalk(random);
+    }
+}
@@ -0,0 +1,133 @@
+package cn.judge.lab3;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * CorpusReader类以内存映射的方式分块读取语料文件，逐个产出单词.
+ * 只有ASCII字母属于单词，其余字节（标点、换行以及非ASCII字符）都视为分隔符，
+ * 字母统一转换为小写，与buildGraphFromText的预处理规则一致.
+ * 跨越分块边界的单词会被完整拼接，内存占用与文件大小无关.
+ * 单词以复用的字符数组交给处理器，读取本身不为每个单词创建String.
+ */
+final class CorpusReader {
+    /**
+     * 单词处理器.
+     */
+    @FunctionalInterface
+    interface WordSink {
+        /**
+         * 处理一个单词，字符数组在返回后会被复用.
+         *
+         * @param word   存放单词的字符数组.
+         * @param length 单词长度，单词位于[0, length).
+         */
+        void accept(char[] word, int length);
+    }
+
+    /**
+     * 默认每次映射的字节数.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * 单词缓冲区的初始长度.
+     */
+    private static final int INITIAL_WORD_LENGTH = 32;
+
+    /**
+     * 每次映射的字节数.
+     */
+    private final int chunkSize;
+
+    /**
+     * 当前正在拼接的单词.
+     */
+    private char[] word = new char[INITIAL_WORD_LENGTH];
+
+    /**
+     * 当前单词已拼接的长度.
+     */
+    private int wordLength;
+
+    /**
+     * 已产出的单词数.
+     */
+    private long wordCount;
+
+    /**
+     * 构造一个使用指定分块大小的读取器.
+     *
+     * @param mappedChunkSize 每次映射的字节数.
+     */
+    CorpusReader(final int mappedChunkSize) {
+        if (mappedChunkSize <= 0) {
+            throw new IllegalArgumentException(
+                    "chunk size must be positive: " + mappedChunkSize);
+        }
+        this.chunkSize = mappedChunkSize;
+    }
+
+    /**
+     * 读取文件并依次处理每个单词.
+     *
+     * @param path     语料文件路径.
+     * @param consumer 单词处理器.
+     * @throws IOException 读取文件失败时抛出.
+     */
+    void read(final Path path, final WordSink consumer)
+            throws IOException {
+        wordLength = 0;
+        try (FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += chunkSize) {
+                MappedByteBuffer chunk = channel.map(
+                        FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(chunkSize, size - position));
+                GraphEvents.Ingest event = new GraphEvents.Ingest();
+                event.begin();
+                long before = wordCount;
+                scan(chunk, consumer);
+                GraphEvents.commit(event, path + "@" + position,
+                        chunk.limit(), wordCount - before);
+            }
+        }
+        // 文件末尾的最后一个单词
+        flush(consumer);
+    }
+
+    private void scan(final MappedByteBuffer chunk,
+                      final WordSink consumer) {
+        int limit = chunk.limit();
+        for (int i = 0; i < limit; i++) {
+            int b = chunk.get(i);
+            if (b >= 'A' && b <= 'Z') {
+                append((char) (b | 0x20));
+            } else if (b >= 'a' && b <= 'z') {
+                append((char) b);
+            } else {
+                flush(consumer);
+            }
+        }
+    }
+
+    private void append(final char c) {
+        if (wordLength == word.length) {
+            word = Arrays.copyOf(word, wordLength * 2);
+        }
+        word[wordLength++] = c;
+    }
+
+    private void flush(final WordSink consumer) {
+        if (wordLength > 0) {
+            consumer.accept(word, wordLength);
+            wordLength = 0;
+            wordCount++;
+        }
+    }
+}
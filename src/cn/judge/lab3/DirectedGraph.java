@@ -1,26 +1,34 @@
 package cn.judge.lab3;
 
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
+import cn.judge.lab3.GraphMetrics.Operation;
+
 /**
  * DirectedGraph类表示一个有向图.
+ * 它不是线程安全的，需要边追加边并发查询时使用ConcurrentGraph.
+ * 每个公开操作的耗时和调用次数记录在metrics()中（默认关闭），
+ * 文本加入、最短路径搜索和渲染同时产生JFR事件，见GraphEvents.
  */
 public class DirectedGraph {
     /**
@@ -33,6 +41,7 @@ public class DirectedGraph {
      * @return 邻接列表
      */
     public Map<Node, List<Node>> getAdjacencyList() {
+        attach();
         return adjacencyList;
     }
     /**
@@ -40,6 +49,100 @@ public class DirectedGraph {
      */
     private final Map<String, Node> nodeMap = new HashMap<>();
 
+    /**
+     * 按编号顺序存储的节点列表，节点编号即其在列表中的下标.
+     */
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * 单词表，单词编号与节点编号一致；构建图时按字符区间查找单词，
+     * 已出现过的单词不必创建String.
+     */
+    private WordTable vocabulary = new WordTable();
+
+    /**
+     * 缓存的紧凑图，图被修改后失效（置为null）.
+     */
+    private CompactGraph frozen;
+
+    /**
+     * 图从快照加载、尚未创建节点对象时为true，此时只有frozen可用.
+     */
+    private boolean detached;
+
+    /**
+     * 图的版本号，每次修改都会递增.
+     */
+    private long version;
+
+    /**
+     * 最近一段文本最后一个单词的编号，追加文本时它与新文本的第一个单词相连；
+     * -1表示没有.
+     */
+    private int lastWord = -1;
+
+    /**
+     * 桥接词索引，图被修改后失效（置为null）.
+     */
+    private BridgeIndex bridgeIndex;
+
+    /**
+     * 最短路径的地标索引，图被修改后失效（置为null）.
+     */
+    private LandmarkIndex landmarkIndex;
+
+    /**
+     * 最近一次从文件构建时快照无法加载的原因，没有忽略快照时为null.
+     */
+    private IOException snapshotFailure;
+
+    /**
+     * 桥接词查询结果的缓存，按版本号失效.
+     */
+    private QueryCache<String> bridgeWordsCache = new QueryCache<>(
+            QueryCache.DEFAULT_MAX_ENTRIES, QueryCache.DEFAULT_MAX_BYTES,
+            QueryCache::stringBytes);
+
+    /**
+     * 点到点最短路径的缓存，按版本号失效.
+     */
+    private QueryCache<Pair<List<Node>, Integer>> pathCache =
+            new QueryCache<>(QueryCache.DEFAULT_MAX_ENTRIES,
+                    QueryCache.DEFAULT_MAX_BYTES, DirectedGraph::pathBytes);
+
+    /**
+     * 所有图共享的Graphviz渲染服务，首次使用时创建.
+     */
+    private static GraphRenderer renderer;
+
+    /**
+     * 生成新文本时选择桥接词的随机数生成器.
+     */
+    private final Random random = new Random();
+
+    /**
+     * 估计内存时每个节点的字节数：Node对象及其权重表、标签字符串、
+     * nodeMap和adjacencyList中的条目以及邻接列表本身.
+     */
+    private static final long NODE_BYTES = 256;
+
+    /**
+     * 估计内存时每条边的字节数：出边表和入边表中的编号、权重、槽位
+     * 和按权重排列的顺序，以及邻接列表中的引用.
+     */
+    private static final long EDGE_BYTES = 56;
+
+    /**
+     * 边的数量（不同的(from, to)对）.
+     */
+    private long edgeCount;
+
+    /**
+     * 各项操作的运行指标.
+     */
+    private final GraphMetrics metrics = new GraphMetrics(
+            this::nodeCount, this::edgeCount, this::estimatedHeapBytes);
+
     /**
      * 添加一条边到有向图.
      *
@@ -47,61 +150,705 @@ public class DirectedGraph {
      * @param to   目标节点
      */
     public void addEdge(final Node from, final Node to) {
-        // 更新边的权重（相邻次数）
-        from.incrementAdjacency(to);
+        addEdge(from, to, 1);
+    }
 
-        // 确保from的邻接列表存在，然后检查to是否已经在列表中
+    /**
+     * 添加一条边到有向图，并把边的权重增加指定的值.
+     *
+     * @param from   源节点
+     * @param to     目标节点
+     * @param weight 增加的权重
+     */
+    void addEdge(final Node from, final Node to, final int weight) {
+        attach();
+        invalidate();
+        // 确保from的邻接列表存在
         List<Node> toNodes = adjacencyList.computeIfAbsent(
                 from, k -> new ArrayList<>());
-        if (!toNodes.contains(to)) {
+        // 更新边的权重（相邻次数），新出现的边同时加入邻接列表
+        if (from.incrementAdjacency(to, weight)) {
             toNodes.add(to);
+            edgeCount++;
         }
     }
     /**
      * 从文本构建有向图.
+     * 文本作为一段新的文本加入，不与之前文本的最后一个单词相连.
      *
      * @param text 输入的文本
      */
     public void buildGraphFromText(final String text) {
-        // 使用空格替换标点符号和换行符，并转换为小写
-        String processedText = text.replaceAll(
-                "[^a-zA-Z\\s]", " ").toLowerCase();
-        // 按空格分割文本为单词数组
-        String[] words = processedText.split("\\s+");
-        // 遍历单词数组，添加节点和边
-        for (int i = 0; i < words.length - 1; i++) {
-            String fromLabel = words[i];
-            String toLabel = words[i + 1];
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            lastWord = -1;
+            ingestText(text);
+            failed = false;
+        } finally {
+            metrics.end(Operation.BUILD_GRAPH, started, failed);
+        }
+    }
 
-            Node from = nodeMap.get((fromLabel));
-            if (from == null) {
-                from = createNode(fromLabel);
+    /**
+     * 把新的文本追加到图中.
+     * 已有的边权重原地增加，上一段文本的最后一个单词与新文本的第一个单词
+     * 之间同样会生成边，因此分多次追加与一次构建整段文本得到的图相同.
+     *
+     * @param text 追加的文本
+     */
+    public void appendText(final String text) {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            ingestText(text);
+            failed = false;
+        } finally {
+            metrics.end(Operation.APPEND_TEXT, started, failed);
+        }
+    }
+
+    /**
+     * 把文本加入图中，与上一段文本的最后一个单词相连.
+     *
+     * @param text 加入的文本
+     */
+    private void ingestText(final String text) {
+        attach();
+        GraphEvents.Ingest event = new GraphEvents.Ingest();
+        event.begin();
+        // 一次扫描取出所有由字母组成的单词并转换为小写，
+        // 标点符号和换行符都是分隔符
+        WordTokenizer tokenizer = new WordTokenizer(text);
+        Node previous = lastWord < 0 ? null : nodes.get(lastWord);
+        long words = 0;
+        while (tokenizer.next()) {
+            Node node = nodeOrCreate(tokenizer.buffer(), tokenizer.length());
+            if (previous != null) {
+                addEdge(previous, node);
             }
-            Node to = nodeMap.get((toLabel));
-            if (to == null) {
-                to = createNode(toLabel);
+            previous = node;
+            words++;
+        }
+        if (previous != null) {
+            endOfText(previous);
+        }
+        GraphEvents.commit(event, "text", text.length(), words);
+    }
+
+    /**
+     * 以流式方式从语料文件构建有向图.
+     * 文件按块内存映射读取，单词逐个加入图中，跨块的相邻单词同样会生成边.
+     *
+     * @param path 语料文件路径
+     * @throws IOException 读取文件失败时抛出
+     */
+    public void buildGraphFromFile(final Path path) throws IOException {
+        buildGraphFromFile(path, CorpusReader.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * 以流式方式从语料文件构建有向图，并指定每次映射的字节数.
+     * 分块大小不影响结果.
+     *
+     * @param path      语料文件路径
+     * @param chunkSize 每次映射的字节数
+     * @throws IOException 读取文件失败时抛出
+     */
+    void buildGraphFromFile(final Path path, final int chunkSize)
+            throws IOException {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            lastWord = -1;
+            ingestFile(path, new CorpusReader(chunkSize));
+            failed = false;
+        } finally {
+            metrics.end(Operation.BUILD_GRAPH, started, failed);
+        }
+    }
+
+    /**
+     * 以流式方式把语料文件追加到图中，与上一段文本的最后一个单词相连.
+     *
+     * @param path 语料文件路径
+     * @throws IOException 读取文件失败时抛出
+     */
+    public void appendFile(final Path path) throws IOException {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            ingestFile(path);
+            failed = false;
+        } finally {
+            metrics.end(Operation.APPEND_TEXT, started, failed);
+        }
+    }
+
+    /**
+     * 按默认分块大小把语料文件加入图中，与上一段文本的最后一个单词相连.
+     *
+     * @param path 语料文件路径
+     * @throws IOException 读取文件失败时抛出
+     */
+    private void ingestFile(final Path path) throws IOException {
+        ingestFile(path, new CorpusReader(CorpusReader.DEFAULT_CHUNK_SIZE));
+    }
+
+    /**
+     * 以流式方式把语料文件加入图中，与上一段文本的最后一个单词相连.
+     * 每个映射块产生一个JFR事件.
+     *
+     * @param path   语料文件路径
+     * @param reader 分块读取文件的读取器
+     * @throws IOException 读取文件失败时抛出
+     */
+    private void ingestFile(final Path path, final CorpusReader reader)
+            throws IOException {
+        attach();
+        Node[] previous = {lastWord < 0 ? null : nodes.get(lastWord)};
+        reader.read(path, (word, length) -> {
+            Node node = nodeOrCreate(word, length);
+            if (previous[0] != null) {
+                addEdge(previous[0], node);
             }
-            addEdge(from, to);
+            previous[0] = node;
+        });
+        if (previous[0] != null) {
+            endOfText(previous[0]);
+        }
+    }
+
+    /**
+     * 使用多个线程并行地从文本构建有向图.
+     * 结果与按顺序逐个单词构建得到的图完全一致.
+     *
+     * @param text        输入的文本
+     * @param parallelism 并行线程数
+     */
+    public void buildGraphFromTextParallel(final String text,
+                                           final int parallelism) {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            lastWord = -1;
+            new ParallelGraphBuilder(parallelism).build(text, this);
+            failed = false;
+        } finally {
+            metrics.end(Operation.BUILD_GRAPH, started, failed);
+        }
+    }
+
+    /**
+     * 查找标签对应的节点，不存在时创建.
+     *
+     * @param label 节点标签
+     * @return 节点
+     */
+    Node nodeOrCreate(final String label) {
+        attach();
+        Node node = nodeMap.get(label);
+        return node != null ? node : createNode(label);
+    }
+
+    /**
+     * 按字符区间查找节点，不存在时创建；只有创建节点时才生成标签字符串.
+     *
+     * @param word   存放单词的字符数组
+     * @param length 单词长度，单词位于[0, length)
+     * @return 节点
+     */
+    private Node nodeOrCreate(final char[] word, final int length) {
+        int id = vocabulary.find(word, 0, length);
+        return id >= 0 ? nodes.get(id)
+                : createNode(new String(word, 0, length));
+    }
+
+    /**
+     * 记录文本的最后一个单词，并确保它出现在邻接列表中，即使它没有出边.
+     *
+     * @param node 最后一个单词的节点
+     */
+    void endOfText(final Node node) {
+        adjacencyList.computeIfAbsent(node, k -> new ArrayList<>());
+        lastWord = node.getId();
+    }
+
+    /**
+     * 获取图的版本号.
+     * 每次添加节点或边都会使版本号递增，由图派生的缓存、索引和快照
+     * 记录构建时的版本号，版本号不同即说明它们已经过期.
+     *
+     * @return 版本号
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * 获取图的运行指标.
+     *
+     * @return 运行指标
+     */
+    GraphMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * 获取节点数量.
+     *
+     * @return 节点数量
+     */
+    public long nodeCount() {
+        return detached ? frozen.nodeCount() : nodes.size();
+    }
+
+    /**
+     * 获取边的数量，同一对单词之间的多次相邻只算一条边.
+     *
+     * @return 边的数量
+     */
+    public long edgeCount() {
+        return detached ? frozen.edgeCount() : edgeCount;
+    }
+
+    /**
+     * 估计图及其缓存的紧凑图和索引占用的堆内存.
+     * 节点和边按固定的平均大小估算，不遍历对象，结果只用于观察趋势.
+     *
+     * @return 字节数
+     */
+    public long estimatedHeapBytes() {
+        CompactGraph compact = frozen;
+        BridgeIndex index = bridgeIndex;
+        long bytes = compact == null ? 0 : compact.memoryBytes();
+        if (index != null) {
+            bytes += index.memoryBytes();
         }
-        String fromLabel = words[words.length - 1];
-        Node from = nodeMap.get(fromLabel);
-        if (from == null) {
-            List<Node> neighbors = new ArrayList<>();
-            adjacencyList.put(from, neighbors);
+        if (!detached) {
+            bytes += NODE_BYTES * nodes.size() + EDGE_BYTES * edgeCount;
         }
+        return bytes;
     }
+
     /**
-     * 创建一个新节点.
+     * 创建一个新节点，标签已经存在时返回已有的节点.
+     * 节点编号与单词表中的编号必须一致，因此同一个标签只能有一个节点.
      *
      * @param label 节点标签
-     * @return 新创建的节点
+     * @return 标签对应的节点
      */
     public Node createNode(final String label) {
+        attach();
+        Node existing = nodeMap.get(label);
+        if (existing != null) {
+            return existing;
+        }
+        invalidate();
         Node newNode = new Node(label);
+        newNode.setId(nodes.size());
+        nodes.add(newNode);
         nodeMap.put(label, newNode);
+        vocabulary.intern(label);
         return newNode;
     }
 
+    /**
+     * 把当前的图冻结为只读的CSR紧凑表示.
+     * 单词编号与节点编号一致，每个节点的出边保持邻接列表中的顺序.
+     *
+     * @return 紧凑图
+     */
+    CompactGraph freeze() {
+        if (detached) {
+            return frozen;
+        }
+        WordTable words = new WordTable(nodes.size());
+        int[] offsets = new int[nodes.size() + 1];
+        int[] targets = new int[(int) edgeCount];
+        int[] weights = new int[(int) edgeCount];
+        int e = 0;
+        for (int id = 0; id < nodes.size(); id++) {
+            offsets[id] = e;
+            Node from = nodes.get(id);
+            words.intern(from.getLabel());
+            // 出边表与邻接列表的顺序相同，都按第一次出现的顺序
+            EdgeWeights out = from.getAdjacencies();
+            for (int i = 0; i < out.size(); i++) {
+                targets[e] = out.target(i);
+                weights[e] = out.weightAt(i);
+                e++;
+            }
+        }
+        offsets[nodes.size()] = e;
+        return new CompactGraph(words, offsets, targets, weights, version);
+    }
+
+    /**
+     * 获取缓存的紧凑图，尚未冻结或已失效时重新冻结.
+     *
+     * @return 紧凑图
+     */
+    private CompactGraph compactView() {
+        if (frozen == null) {
+            frozen = freeze();
+        }
+        return frozen;
+    }
+
+    /**
+     * 以文本文件的快照启动：快照由同一份文本生成时直接内存映射加载，
+     * 否则从文本重新构建并写出新的快照.
+     * 从快照加载时不创建Node对象，直到第一次需要它们的操作才按需创建.
+     * 快照与文本匹配但无法加载时也从文本重新构建，原因由
+     * snapshotFailure返回，是否提示用户由调用方决定.
+     *
+     * @param path     语料文件路径
+     * @param snapshot 快照文件路径
+     * @return 使用了快照时返回true，从文本重新构建时返回false
+     * @throws IOException 读取语料或写入快照失败时抛出
+     */
+    public boolean buildGraphFromFile(final Path path, final Path snapshot)
+            throws IOException {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            boolean loaded = buildOrLoad(path, snapshot);
+            failed = false;
+            return loaded;
+        } finally {
+            metrics.end(Operation.BUILD_GRAPH, started, failed);
+        }
+    }
+
+    private boolean buildOrLoad(final Path path, final Path snapshot)
+            throws IOException {
+        snapshotFailure = null;
+        byte[] sourceHash = GraphSnapshot.hash(path);
+        if (GraphSnapshot.matches(snapshot, sourceHash)) {
+            try {
+                loadSnapshot(snapshot);
+                return true;
+            } catch (IOException e) {
+                // 快照损坏，退回到从文本构建
+                snapshotFailure = e;
+            }
+        }
+        lastWord = -1;
+        ingestFile(path);
+        saveSnapshot(snapshot, sourceHash);
+        return false;
+    }
+
+    /**
+     * 获取最近一次buildGraphFromFile忽略快照的原因.
+     *
+     * @return 快照与文本匹配却无法加载时的异常；快照已加载、不存在
+     *         或已过期时返回null
+     */
+    public IOException snapshotFailure() {
+        return snapshotFailure;
+    }
+
+    /**
+     * 把当前的图保存为二进制快照.
+     * 已构建的地标索引一起保存在快照旁边的文件中，按图的版本号校验.
+     *
+     * @param snapshot   快照文件路径
+     * @param sourceHash 源文本的哈希值，用于判断快照是否过期
+     * @throws IOException 写入失败时抛出
+     */
+    public void saveSnapshot(final Path snapshot, final byte[] sourceHash)
+            throws IOException {
+        GraphSnapshot.write(compactView(), lastWord, sourceHash, snapshot);
+        Path landmarks = landmarkFile(snapshot);
+        if (landmarkIndex != null) {
+            landmarkIndex.save(landmarks, compactView().nodeCount(), version);
+        } else {
+            // 旧的索引可能属于版本号恰好相同的另一个图，不能留下
+            Files.deleteIfExists(landmarks);
+        }
+    }
+
+    /**
+     * 从二进制快照加载图，替换当前的内容.
+     * 快照旁边有地标索引时一起加载.
+     *
+     * @param snapshot 快照文件路径
+     * @throws IOException 读取失败或快照损坏时抛出
+     */
+    public void loadSnapshot(final Path snapshot) throws IOException {
+        GraphSnapshot loaded = GraphSnapshot.load(snapshot);
+        // 在替换当前内容之前加载，索引与快照不匹配时图保持不变
+        Path landmarks = landmarkFile(snapshot);
+        LandmarkIndex landmarksLoaded = Files.exists(landmarks)
+                ? LandmarkIndex.load(landmarks, loaded.graph().nodeCount(),
+                        loaded.graph().version())
+                : null;
+        adjacencyList.clear();
+        nodeMap.clear();
+        nodes.clear();
+        vocabulary = new WordTable();
+        // 快照的版本号可能小于当前版本号，缓存要整个清空
+        bridgeWordsCache.clear();
+        pathCache.clear();
+        edgeCount = 0;
+        invalidate();
+        frozen = loaded.graph();
+        version = frozen.version();
+        lastWord = loaded.lastWord();
+        detached = true;
+        landmarkIndex = landmarksLoaded;
+    }
+
+    /**
+     * 获取与快照一起保存的地标索引的文件路径.
+     *
+     * @param snapshot 快照文件路径
+     * @return 地标索引文件路径
+     */
+    static Path landmarkFile(final Path snapshot) {
+        return snapshot.resolveSibling(snapshot.getFileName() + ".landmarks");
+    }
+
+    /**
+     * 按紧凑图创建节点对象和邻接列表，每个节点都出现在邻接列表中.
+     * 图不是从快照加载的或已经创建过节点时什么也不做.
+     */
+    private void attach() {
+        if (!detached) {
+            return;
+        }
+        detached = false;
+        CompactGraph compact = frozen;
+        for (int id = 0; id < compact.nodeCount(); id++) {
+            Node node = new Node(compact.word(id));
+            node.setId(id);
+            nodes.add(node);
+            nodeMap.put(node.getLabel(), node);
+            vocabulary.intern(node.getLabel());
+        }
+        for (Node from : nodes) {
+            int id = from.getId();
+            List<Node> toNodes = new ArrayList<>(compact.outDegree(id));
+            for (int e = compact.edgeStart(id); e < compact.edgeEnd(id); e++) {
+                Node to = nodes.get(compact.target(e));
+                from.incrementAdjacency(to, compact.weight(e));
+                toNodes.add(to);
+            }
+            adjacencyList.put(from, toNodes);
+        }
+        edgeCount = compact.edgeCount();
+    }
+
+    /**
+     * 丢弃所有由当前图派生的缓存和索引.
+     */
+    private void invalidate() {
+        version++;
+        frozen = null;
+        bridgeIndex = null;
+        landmarkIndex = null;
+    }
+
+    /**
+     * 构建桥接词索引，之后的桥接词查询和新文本生成都通过索引完成.
+     * 图再被修改时索引自动失效，需要重新构建.
+     *
+     * @return 索引占用的内存字节数
+     */
+    public long buildBridgeIndex() {
+        bridgeIndex = new BridgeIndex(compactView());
+        return bridgeIndex.memoryBytes();
+    }
+
+    /**
+     * 构建可达性索引（强连通分量和缩点图的标签）.
+     * 不调用时索引在第一次最短路径或可达性查询时构建；
+     * 图再被修改时索引随紧凑图一起失效.
+     *
+     * @return 索引占用的内存字节数
+     */
+    public long buildReachabilityIndex() {
+        return compactView().reachability().memoryBytes();
+    }
+
+    /**
+     * 构建最短路径的地标索引，之后的点到点最短路径查询使用A*搜索.
+     * 图再被修改时索引自动失效.
+     *
+     * @param landmarks   地标数量
+     * @param parallelism 并行线程数
+     */
+    public void buildLandmarkIndex(final int landmarks,
+                                   final int parallelism) {
+        landmarkIndex = LandmarkIndex.build(
+                compactView(), landmarks, parallelism);
+    }
+
+    /**
+     * 把地标索引保存到文件.
+     *
+     * @param path 文件路径
+     * @throws IOException 写入失败时抛出
+     */
+    public void saveLandmarkIndex(final Path path) throws IOException {
+        if (landmarkIndex == null) {
+            throw new IllegalStateException("landmark index not built");
+        }
+        landmarkIndex.save(path, compactView().nodeCount(), version);
+    }
+
+    /**
+     * 从文件加载与当前图对应的地标索引.
+     *
+     * @param path 文件路径
+     * @throws IOException 读取失败或与图不匹配时抛出
+     */
+    public void loadLandmarkIndex(final Path path) throws IOException {
+        landmarkIndex = LandmarkIndex.load(
+                path, compactView().nodeCount(), version);
+    }
+
+    /**
+     * 设置查询缓存的上限，清空已缓存的结果和统计.
+     * 桥接词和最短路径各有一个缓存，各自使用这两个上限.
+     *
+     * @param maxEntries 条目数上限，为0时关闭缓存
+     * @param maxBytes   估计的字节数上限
+     */
+    public void configureQueryCache(final int maxEntries,
+                                    final long maxBytes) {
+        bridgeWordsCache = new QueryCache<>(maxEntries, maxBytes,
+                QueryCache::stringBytes);
+        pathCache = new QueryCache<>(maxEntries, maxBytes,
+                DirectedGraph::pathBytes);
+    }
+
+    /**
+     * 获取查询缓存的统计信息.
+     *
+     * @return 桥接词缓存和最短路径缓存的命中、未命中和淘汰次数
+     */
+    public String queryCacheStatistics() {
+        return "bridge words: " + bridgeWordsCache.statistics()
+                + "\nshortest paths: " + pathCache.statistics();
+    }
+
+    /**
+     * 估计一条缓存的路径占用的字节数，节点与图共享，不计入.
+     */
+    private static long pathBytes(final Pair<List<Node>, Integer> path) {
+        List<Node> pathNodes = path.getFirst();
+        return 64 + (pathNodes == null ? 0 : 8L * pathNodes.size());
+    }
+
+    /**
+     * 获取地标索引的查询统计.
+     *
+     * @return 查询次数和平均确定的节点数，没有索引时返回null
+     */
+    public String landmarkStatistics() {
+        if (landmarkIndex == null) {
+            return null;
+        }
+        return "queries: " + landmarkIndex.queryCount()
+                + ", average settled nodes: "
+                + String.format("%.1f", landmarkIndex.averageSettled());
+    }
+
+    /**
+     * 获取桥接词索引，尚未构建或已失效时重新构建.
+     *
+     * @return 桥接词索引
+     */
+    private BridgeIndex bridgeIndex() {
+        if (bridgeIndex == null) {
+            buildBridgeIndex();
+        }
+        return bridgeIndex;
+    }
+
+    /**
+     * 查找word1到word2的所有桥接词.
+     *
+     * @param node1 第一个单词的节点
+     * @param node2 第二个单词的节点
+     * @return 按node1邻接列表顺序排列的桥接词节点
+     */
+    private List<Node> findBridgeWords(final Node node1, final Node node2) {
+        List<Node> bridgeWords = new ArrayList<>();
+        if (bridgeIndex != null) {
+            int[] ids = new int[bridgeIndex.graph().outDegree(node1.getId())];
+            int count = bridgeIndex.collect(node1.getId(), node2.getId(), ids);
+            for (int i = 0; i < count; i++) {
+                bridgeWords.add(nodes.get(ids[i]));
+            }
+            return bridgeWords;
+        }
+        for (Node neighbor : adjacencyList.get(node1)) {
+            if (adjacencyList.get(neighbor).contains(node2)) {
+                bridgeWords.add(neighbor);
+            }
+        }
+        return bridgeWords;
+    }
+
+    /**
+     * 生成单词不在图中时的提示信息.
+     *
+     * @param word1  第一个单词
+     * @param found1 第一个单词是否在图中
+     * @param word2  第二个单词
+     * @param found2 第二个单词是否在图中
+     * @return 提示信息，两个单词都在图中时返回null
+     */
+    static String missingWordsMessage(final String word1,
+                                      final boolean found1,
+                                      final String word2,
+                                      final boolean found2) {
+        if (!found1 && !found2) {
+            return "No \"" + word1 + "\" and \"" + word2 + "\" in the graph!";
+        } else if (!found1) {
+            return "No \"" + word1 + "\" in the graph!";
+        } else if (!found2) {
+            return "No \"" + word2 + "\" in the graph!";
+        }
+        return null;
+    }
+
+    /**
+     * 把查询到的桥接词格式化为输出字符串.
+     *
+     * @param word1       第一个单词
+     * @param word2       第二个单词
+     * @param bridgeWords 桥接词列表
+     * @return 桥接词的字符串表示
+     */
+    static String bridgeWordsMessage(final String word1, final String word2,
+                                     final List<String> bridgeWords) {
+        if (bridgeWords.isEmpty()) {
+            return "No bridge words from \""
+                    + word1 + "\" to \"" + word2 + "\"!";
+        }
+        StringBuilder result = new StringBuilder();
+        result.append("The bridge words from ")
+                .append("\"").append(word1).append("\"")
+                .append(" to ").append("\"").append(word2).append("\"")
+                .append(" are: ");
+        for (int i = 0; i < bridgeWords.size(); i++) {
+            result.append(bridgeWords.get(i));
+            if (i < bridgeWords.size() - 2) {
+                result.append(", ");
+            } else if (bridgeWords.size() > 1
+                    && i == bridgeWords.size() - 2) {
+                result.append(" and ");
+            }
+        }
+        result.append(".");
+        return result.toString();
+    }
+
     /**
      * 查询两个单词之间的桥接词.
      *
@@ -110,45 +857,116 @@ public class DirectedGraph {
      * @return 桥接词的字符串表示
      */
     String queryBridgeWords(final String word1, final String word2) {
-        StringBuilder result = new StringBuilder();
-        List<Node> bridgeWords = new ArrayList<>();
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            String message = bridgeWordsCache.get(version, word1, word2);
+            if (message == null) {
+                message = bridgeWordsReport(word1, word2);
+                bridgeWordsCache.put(version, word1, word2, message);
+            }
+            failed = false;
+            return message;
+        } finally {
+            metrics.end(Operation.QUERY_BRIDGE_WORDS, started, failed);
+        }
+    }
+
+    private String bridgeWordsReport(final String word1, final String word2) {
+        if (detached) {
+            return compactView().queryBridgeWords(word1, word2);
+        }
         Node node1 = nodeMap.get(word1);
         Node node2 = nodeMap.get(word2);
-        if (!adjacencyList.containsKey(node1)
-                && !adjacencyList.containsKey(node2)) {
-            return "No \"" + word1 + "\" and \"" + word2 + "\" in the graph!";
-        } else if (!adjacencyList.containsKey(node1)) {
-            return "No \"" + word1 + "\" in the graph!";
-        } else if (!adjacencyList.containsKey(node2)) {
-            return "No \"" + word2 + "\" in the graph!";
-        } else {
-            for (Node neighbor : adjacencyList.get(node1)) {
-                if (adjacencyList.get(neighbor).contains(node2)) {
-                    bridgeWords.add(neighbor);
-                }
-            }
+        String missing = missingWordsMessage(
+                word1, adjacencyList.containsKey(node1),
+                word2, adjacencyList.containsKey(node2));
+        if (missing != null) {
+            return missing;
         }
         // 遍历word1的邻居，检查它们是否连接到word2
-        if (!bridgeWords.isEmpty()) {
-            result.append("The bridge words from ")
-                    .append("\"").append(word1).append("\"")
-                    .append(" to ").append("\"").append(word2).append("\"")
-                    .append(" are: ");
-            for (int i = 0; i < bridgeWords.size(); i++) {
-                result.append(bridgeWords.get(i).getLabel());
-                if (i < bridgeWords.size() - 2) {
-                    result.append(", ");
-                } else if (bridgeWords.size() > 1
-                        && i == bridgeWords.size() - 2) {
-                    result.append(" and ");
+        List<String> bridgeWords = new ArrayList<>();
+        for (Node neighbor : findBridgeWords(node1, node2)) {
+            bridgeWords.add(neighbor.getLabel());
+        }
+        return bridgeWordsMessage(word1, word2, bridgeWords);
+    }
+
+    /**
+     * 获取单词的入度，即紧接在它之前出现过的不同单词数.
+     *
+     * @param word 单词
+     * @return 入度，单词不在图中时返回-1
+     */
+    public int inDegree(final String word) {
+        attach();
+        Node node = nodeMap.get(word);
+        return node == null ? -1 : node.getPredecessors().size();
+    }
+
+    /**
+     * 获取单词的出度，即紧接在它之后出现过的不同单词数.
+     *
+     * @param word 单词
+     * @return 出度，单词不在图中时返回-1
+     */
+    public int outDegree(final String word) {
+        attach();
+        Node node = nodeMap.get(word);
+        return node == null ? -1 : node.getAdjacencies().size();
+    }
+
+    /**
+     * 查询最常紧接在单词之后出现的k个单词.
+     * 每个节点的边随addEdge保持按权重排序，查询只取出前k个，不排序.
+     *
+     * @param word 单词
+     * @param k    最多返回的单词数
+     * @return 按相邻次数从多到少排列的单词，单词不在图中时为空列表
+     */
+    public List<String> topSuccessors(final String word, final int k) {
+        return topNeighbors(word, k, true);
+    }
+
+    /**
+     * 查询最常紧接在单词之前出现的k个单词.
+     *
+     * @param word 单词
+     * @param k    最多返回的单词数
+     * @return 按相邻次数从多到少排列的单词，单词不在图中时为空列表
+     */
+    public List<String> topPredecessors(final String word, final int k) {
+        return topNeighbors(word, k, false);
+    }
+
+    private List<String> topNeighbors(final String word, final int k,
+                                      final boolean successors) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            attach();
+            Node node = nodeMap.get(word);
+            List<String> words;
+            if (node == null) {
+                words = Collections.emptyList();
+            } else {
+                EdgeWeights edges = successors
+                        ? node.getAdjacencies() : node.getPredecessors();
+                int n = Math.min(k, edges.size());
+                words = new ArrayList<>(n);
+                for (int r = 0; r < n; r++) {
+                    words.add(nodes.get(edges.target(edges.ranked(r)))
+                            .getLabel());
                 }
             }
-            result.append(".");
-        } else {
-            return "No bridge words from \""
-                    + word1 + "\" to \"" + word2 + "\"!";
+            failed = false;
+            return words;
+        } finally {
+            metrics.end(Operation.TOP_NEIGHBORS, started, failed);
         }
-        return result.toString();
     }
 
     /**
@@ -158,27 +976,34 @@ public class DirectedGraph {
      * @return 生成的新文本
      */
     String generateNewText(final String inputText) {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            String text = insertBridgeWords(inputText);
+            failed = false;
+            return text;
+        } finally {
+            metrics.end(Operation.GENERATE_NEW_TEXT, started, failed);
+        }
+    }
+
+    private String insertBridgeWords(final String inputText) {
+        attach();
         // 将文本分割成单词列表
         String[] words = inputText.split("\\s+");
 
         StringBuilder result = new StringBuilder();
 
         for (int i = 0; i < words.length - 1; i++) {
-            List<Node> bridgeWords = new ArrayList<>();
             Node node1 = nodeMap.get(words[i]);
             Node node2 = nodeMap.get(words[i + 1]);
             if (node1 == null || node2 == null) {
                 result.append(words[i]).append(" ");
                 continue;
             }
-            for (Node neighbor : adjacencyList.get(node1)) {
-                if (adjacencyList.get(neighbor).contains(node2)) {
-                    bridgeWords.add(neighbor);
-                }
-            }
+            List<Node> bridgeWords = findBridgeWords(node1, node2);
             if (!bridgeWords.isEmpty()) {
                 // 随机选择一个桥接词
-                Random random = new Random();
                 Node bridgeWord = bridgeWords
                         .get(random.nextInt(bridgeWords.size()));
                 result.append(words[i]).append(" ")
@@ -192,6 +1017,90 @@ public class DirectedGraph {
         return result.toString();
     }
 
+    /**
+     * 以流式方式根据桥接词生成新文本.
+     * 边读边写，不需要把整个输入放进内存.
+     *
+     * @param in   输入的文本
+     * @param out  生成的新文本
+     * @param seed 随机种子，种子和输入相同时输出总是相同
+     * @throws IOException 读写失败时抛出
+     */
+    public void generateNewText(final Reader in, final Writer out,
+                                final long seed) throws IOException {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            new TextGenerator(bridgeIndex()).generate(in, out, seed);
+            failed = false;
+        } finally {
+            metrics.end(Operation.GENERATE_NEW_TEXT, started, failed);
+        }
+    }
+
+    /**
+     * 使用多个线程根据桥接词生成新文本.
+     * 输入在单词边界处分块，桥接词只由种子和单词位置决定，
+     * 因此种子固定时输出与线程数无关，并与generateNewText的流式输出相同.
+     *
+     * @param inputText   输入的文本
+     * @param parallelism 并行线程数
+     * @param seed        随机种子
+     * @return 生成的新文本
+     */
+    public String generateNewTextParallel(final String inputText,
+                                          final int parallelism,
+                                          final long seed) {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            String text = new TextGenerator(bridgeIndex())
+                    .generateParallel(inputText, parallelism, seed);
+            failed = false;
+            return text;
+        } finally {
+            metrics.end(Operation.GENERATE_NEW_TEXT, started, failed);
+        }
+    }
+
+    /**
+     * 一次性计算从一个单词出发到所有单词的最短路径.
+     *
+     * @param word 起始单词
+     * @return 最短路径树，单词不在图中时返回null
+     */
+    ShortestPathTree shortestPathsFrom(final String word) {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            ShortestPathTree tree = compactView().shortestPathTree(word);
+            failed = false;
+            return tree;
+        } finally {
+            metrics.end(Operation.SHORTEST_PATHS_FROM, started, failed);
+        }
+    }
+
+    /**
+     * 判断两个单词之间是否存在路径，不做最短路径搜索.
+     * 大多数不可达的单词对由可达性索引的标签在常数时间内排除.
+     *
+     * @param word1 起始单词
+     * @param word2 结束单词
+     * @return 两个单词都在图中且存在路径时返回true
+     */
+    public boolean isReachable(final String word1, final String word2) {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            boolean reachable = compactView().isReachable(word1, word2);
+            failed = false;
+            return reachable;
+        } finally {
+            metrics.end(Operation.IS_REACHABLE, started, failed);
+        }
+    }
+
     /**
      * 计算两个单词之间的最短路径.
      *
@@ -200,6 +1109,20 @@ public class DirectedGraph {
      * @return 最短路径的字符串表示
      */
     String calcShortestPath(final String word1, final String word2) {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            String message = describeShortestPath(word1, word2);
+            failed = false;
+            return message;
+        } finally {
+            metrics.end(Operation.CALC_SHORTEST_PATH, started, failed);
+        }
+    }
+
+    private String describeShortestPath(final String word1,
+                                        final String word2) {
+        attach();
         StringBuilder result = new StringBuilder();
         Node startNode = nodeMap.get((word1));
         if (startNode == null) {
@@ -207,33 +1130,34 @@ public class DirectedGraph {
         }
 
         if (!word1.equals("") && word2.equals("")) {
-            // 遍历图中所有节点，并计算从startNode到每个节点的最短路径
+            // 一次单源搜索得到从startNode到每个节点的最短路径
+            ShortestPathTree tree = shortestPathsFrom(word1);
             int i = 1;
             // 存储i值到List<Node>的映射
             Map<Integer, List<Node>> shortestPathsMap = new HashMap<>();
-            for (Node endNode : nodeMap.values()) {
-                if (!endNode.getLabel().equals(word1)) { // 避免计算到自身的路径
-                    Pair<List<Node>, Integer> shortestPath =
-                            dijkstra(startNode, endNode);
-                    if (shortestPath != null) {
-                        // 将最短路径添加到map中，使用i作为键
-                        shortestPathsMap.put(i, shortestPath.getFirst());
-                        // 打印包含路径和长度的信息
-                        System.out.println(i + ":" + "From \""
-                                + word1 + "\" to \"" + endNode.getLabel()
-                                + "\": "
-                                + shortestPath.getFirst()
-                                .stream().map(Node::getLabel)
-                                .collect(Collectors.joining(" -> "))
-                                + " (length: "
-                                + shortestPath.getSecond() + ")");
-                        i++;
-                    } else {
-                        // 打印没有路径的信息
-                        System.out.println(
-                                "No path from " + word1
-                                        + " to " + endNode.getLabel());
+            for (int id = 0; id < tree.size(); id++) {
+                String endLabel = tree.word(id);
+                if (endLabel.equals(word1)) { // 避免计算到自身的路径
+                    continue;
+                }
+                if (tree.isReachable(id)) {
+                    List<String> path = tree.pathTo(id);
+                    // 将最短路径添加到map中，使用i作为键
+                    List<Node> nodeInPath = new ArrayList<>();
+                    for (String label : path) {
+                        nodeInPath.add(nodeMap.get(label));
                     }
+                    shortestPathsMap.put(i, nodeInPath);
+                    // 打印包含路径和长度的信息
+                    System.out.println(i + ":" + "From \""
+                            + word1 + "\" to \"" + endLabel + "\": "
+                            + String.join(" -> ", path)
+                            + " (length: " + tree.distance(id) + ")");
+                    i++;
+                } else {
+                    // 打印没有路径的信息
+                    System.out.println(
+                            "No path from " + word1 + " to " + endLabel);
                 }
             }
             Scanner scanner = new Scanner(System.in);
@@ -271,16 +1195,20 @@ public class DirectedGraph {
             return "No \"" + word2 + "\" in the graph!";
         }
 
-        Pair<List<Node>, Integer> shortestPath = dijkstra(startNode, endNode);
-        if (shortestPath != null) {
-            result.append("The shortest path is: ")
-                    .append(shortestPath.getFirst()
-                            .stream().map(Node::getLabel)
-                            .collect(Collectors.joining(" -> ")));
-            result.append("\n");
-        } else {
-            result.append("No road!");
+        Pair<List<Node>, Integer> shortestPath =
+                pathCache.get(version, word1, word2);
+        if (shortestPath == null) {
+            shortestPath = dijkstra(startNode, endNode);
+            pathCache.put(version, word1, word2, shortestPath);
+        }
+        if (shortestPath.getFirst() == null) {
+            return "No road!";
         }
+        result.append("The shortest path is: ")
+                .append(shortestPath.getFirst()
+                        .stream().map(Node::getLabel)
+                        .collect(Collectors.joining(" -> ")));
+        result.append("\n");
         printGraphWithShortestPath(
                 "graph_with_shortest_path.dot",
                 shortestPath.getFirst(),
@@ -299,48 +1227,100 @@ public class DirectedGraph {
      */
     public Pair<List<Node>, Integer> dijkstra(
             final Node start, final Node end) {
-        // 初始化距离和已访问节点
-        Map<Node, Integer> distances = new HashMap<>();
-        Set<Node> visited = new HashSet<>();
-        Map<Node, Node> previous = new HashMap<>(); // 用于记录每个节点的父节点
-
-        // 初始化距离
-        for (Node node : adjacencyList.keySet()) {
-            distances.put(node, node.equals(start) ? 0 : Integer.MAX_VALUE);
-        }
-
-        // 使用优先队列来存储待处理的节点
-        PriorityQueue<Node> pq = new PriorityQueue<>(
-                (a, b) -> Integer.compare(distances.get(a), distances.get(b)));
-        pq.add(start);
-
-        while (!pq.isEmpty()) {
-            Node current = pq.poll();
-            visited.add(current);
-
-            // 遍历当前节点的所有邻居
-            for (Node neighbor : adjacencyList.get(current)) {
-                // 如果邻居节点未被访问过，并且通过当前节点到达邻居节点的距离更短
-                if (!visited.contains(neighbor) && distances.get(current)
-                        + current.getAdjacencies().get(neighbor)
-                        < distances.get(neighbor)) {
-                    distances.put(neighbor, distances.get(current)
-                            + current.getAdjacencies().get(neighbor));
-                    previous.put(neighbor, current); // 记录父节点
-                    pq.add(neighbor);
-                }
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            Pair<List<Node>, Integer> path = search(start, end);
+            failed = false;
+            return path;
+        } finally {
+            metrics.end(Operation.DIJKSTRA, started, failed);
+        }
+    }
+
+    private Pair<List<Node>, Integer> search(final Node start,
+                                             final Node end) {
+        if (start == null || end == null
+                || start.getId() < 0 || end.getId() < 0) {
+            return new Pair<>(null, -1); // 节点不在图中
+        }
+        CompactGraph compact = compactView();
+        if (!compact.reachability().reachable(start.getId(), end.getId())) {
+            return new Pair<>(null, -1); // 不可达，不必搜索
+        }
+        // 有地标索引时用A*搜索，否则双向搜索，两种方式都不分配内存
+        PathEngine engine = compact.borrowEngine();
+        try {
+            GraphEvents.PathSearch event = new GraphEvents.PathSearch();
+            event.begin();
+            int distance;
+            if (landmarkIndex != null) {
+                distance = engine.aStar(start.getId(), end.getId(),
+                        landmarkIndex);
+                landmarkIndex.record(engine.settledCount());
+            } else {
+                distance = engine.bidirectional(start.getId(), end.getId());
+            }
+            GraphEvents.commit(event,
+                    landmarkIndex != null ? "aStar" : "bidirectional", engine,
+                    start.getId(), end.getId(), distance);
+            if (distance == PathEngine.UNREACHABLE) {
+                return new Pair<>(null, -1); // 没有找到路径
+            }
+            // 构建并返回最短路径
+            int[] ids = new int[engine.pathLength()];
+            engine.copyPath(ids);
+            List<Node> path = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                path.add(nodes.get(id));
             }
+            return new Pair<>(path, distance);
+        } finally {
+            compact.releaseEngine(engine);
         }
-        // 构建并返回最短路径
-        if (distances.get(end) != Integer.MAX_VALUE) {
-            List<Node> path = new ArrayList<>();
-            for (Node node = end; node != null; node = previous.get(node)) {
-                path.add(node);
+    }
+
+    /**
+     * 计算所有单词对之间的最短距离并导出到文件，供离线分析使用.
+     *
+     * @param path        输出文件路径
+     * @param format      输出格式
+     * @param cutoff      截止距离，超过它的单词对不输出，小于0表示不限制
+     * @param parallelism 并行线程数
+     * @return 写出的单词对数量
+     * @throws IOException 写入失败时抛出
+     */
+    long exportAllPairs(final Path path,
+                        final AllPairsExporter.Format format,
+                        final int cutoff, final int parallelism)
+            throws IOException {
+        return new AllPairsExporter(compactView(), parallelism, cutoff)
+                .export(path, format);
+    }
+
+    /**
+     * 把有向图导出为DOT文件，可以同时高亮任意多条路径.
+     *
+     * @param dotFileName      dot文件路径
+     * @param highlightedPaths 需要高亮的路径，每条路径使用不同的颜色
+     * @throws IOException 写入失败时抛出
+     */
+    public void exportDot(final String dotFileName,
+                          final List<List<Node>> highlightedPaths)
+            throws IOException {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            attach();
+            DotExporter exporter = new DotExporter();
+            for (List<Node> path : highlightedPaths) {
+                exporter.highlight(path);
             }
-            Collections.reverse(path); // 因为从end回溯到start，所以需要反转列表
-            return new Pair<>(path, distances.get(end));
+            exporter.write(adjacencyList, Paths.get(dotFileName));
+            failed = false;
+        } finally {
+            metrics.end(Operation.EXPORT_DOT, started, failed);
         }
-        return new Pair<>(null, -1); // 没有找到路径
     }
 
     /**
@@ -353,50 +1333,17 @@ public class DirectedGraph {
     public void printGraphWithShortestPath(
             final String dotFileName,
             final List<Node> shortestPath, final String outImageFileName) {
-        try (BufferedWriter writer =
-                     new BufferedWriter(new FileWriter(dotFileName))) {
-            writer.write("digraph G {\n");
-
-            for (Map.Entry<Node, List<Node>> entry : adjacencyList.entrySet()) {
-                Node from = entry.getKey();
-                List<Node> toNodes = entry.getValue();
-
-                for (Node to : toNodes) {
-                    // 如果没有权重，默认为1
-                    int weight = from.getAdjacencies().getOrDefault(to, 1);
-                    String edgeColor = ""; // 默认边颜色
-
-                    // 检查这条边是否在最短路径上，并设置不同的颜色
-                    if (isInPath(from, to, shortestPath)) {
-                        edgeColor = ", color=\"red\", penwidth=2"; // 假设用红色高亮显示
-                    }
-                    writer.write("\t\"" + from.getLabel()
-                            + "\" -> \"" + to.getLabel() + "\" [label=\""
-                            + weight + "\"" + edgeColor + "];\n");
-                }
-            }
-
-            writer.write("}");
+        try {
+            exportDot(dotFileName, Collections.singletonList(shortestPath));
             System.out.println(
                     "Graph with shortest path has been written to "
                             + dotFileName);
-
         } catch (IOException e) {
             e.printStackTrace();
         }
         showDirectedGraph(dotFileName, outImageFileName);
     }
 
-    private boolean isInPath(final Node from,
-                             final Node to,
-                             final List<Node> path) {
-        for (int i = 0; i < path.size() - 1; i++) {
-            if (path.get(i).equals(from) && path.get(i + 1).equals(to)) {
-                return true;
-            }
-        }
-        return false;
-    }
     /**
      * 打印路径.
      *
@@ -419,6 +1366,19 @@ public class DirectedGraph {
      * @return 随机游走的路径
      */
     String randomWalk() {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            String walk = interactiveWalk();
+            failed = false;
+            return walk;
+        } finally {
+            metrics.end(Operation.RANDOM_WALK, started, failed);
+        }
+    }
+
+    private String interactiveWalk() {
+        attach();
         StringBuilder result = new StringBuilder();
         List<Node> visitedNodes = new ArrayList<>();
         Set<Node> visitedSet = new HashSet<>();
@@ -437,8 +1397,7 @@ public class DirectedGraph {
             System.out.println("Visited nodes:");
             System.out.println(currentNode.getLabel());
             // 随机选择一个相邻节点
-            List<Node> neighbors = new ArrayList<>(
-                    currentNode.getAdjacencies().keySet());
+            List<Node> neighbors = adjacencyList.get(currentNode);
             if (neighbors.isEmpty()) {
                 // 如果没有相邻节点，则跳出循环
                 break;
@@ -478,6 +1437,70 @@ public class DirectedGraph {
         return result.toString();
     }
 
+    /**
+     * 计算所有单词的带权PageRank，使用默认的阻尼系数、容差和迭代次数上限，
+     * 线程数等于可用的处理器数.
+     *
+     * @return 计算结果，可按单词查询分数或取出分数最高的单词
+     */
+    PageRank pageRank() {
+        return pageRank(PageRank.DEFAULT_TOLERANCE,
+                PageRank.DEFAULT_MAX_ITERATIONS,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 计算所有单词的带权PageRank.
+     * 边的权重即相邻次数，没有出边的单词把分数平均分给所有单词.
+     *
+     * @param tolerance     容差，两轮之间分数变化的L1范数不超过它时停止
+     * @param maxIterations 迭代次数上限
+     * @param parallelism   并行线程数
+     * @return 计算结果
+     */
+    PageRank pageRank(final double tolerance, final int maxIterations,
+                      final int parallelism) {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            PageRank rank = new PageRank(compactView(),
+                    PageRank.DEFAULT_DAMPING, tolerance, maxIterations,
+                    parallelism).compute();
+            failed = false;
+            return rank;
+        } finally {
+            metrics.end(Operation.PAGE_RANK, started, failed);
+        }
+    }
+
+    /**
+     * 批量生成按边权加权的随机游走并写入文件，不需要任何交互.
+     * 种子相同时结果总是相同，与线程数无关.
+     *
+     * @param path        输出文件路径，每行一条游走
+     * @param walks       游走条数
+     * @param maxLength   每条游走的最大单词数
+     * @param seed        随机种子
+     * @param parallelism 并行线程数
+     * @return 写出的单词总数
+     * @throws IOException 写入失败时抛出
+     */
+    public long generateRandomWalks(final Path path, final long walks,
+                                    final int maxLength, final long seed,
+                                    final int parallelism)
+            throws IOException {
+        long started = metrics.begin();
+        boolean failed = true;
+        try {
+            long written = compactView().walkGenerator()
+                    .generate(path, walks, maxLength, seed, parallelism);
+            failed = false;
+            return written;
+        } finally {
+            metrics.end(Operation.RANDOM_WALK, started, failed);
+        }
+    }
+
     /**
      * 显示有向图.
      *
@@ -487,26 +1510,53 @@ public class DirectedGraph {
 
     void showDirectedGraph(final String dotFilePath,
                            final String outputImagePath) {
-        // 构造Graphviz dot命令
-        String cmd = "dot -Tpng " + dotFilePath + " -o " + outputImagePath;
-        try {
-            Process process = Runtime.getRuntime().exec(cmd);
-            // 读取并处理输出
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
-            }
-            // 等待命令执行完成
-            int exitVal = process.waitFor();
-            if (exitVal == 0) {
-                System.out.println(outputImagePath + " has been saved!");
-            } else {
-                System.out.println("Error!");
-            }
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+        // 交给渲染服务异步执行，完成后打印结果，不阻塞调用方；
+        // 记录的耗时从提交到渲染完成
+        long started = metrics.begin();
+        renderAsync(dotFilePath, outputImagePath).whenComplete(
+                (image, error) -> {
+                    metrics.end(Operation.SHOW_DIRECTED_GRAPH, started,
+                            error != null);
+                    if (error == null) {
+                        System.out.println(image + " has been saved!");
+                    } else {
+                        System.out.println("Error! " + error.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * 异步地把DOT文件渲染为PNG，内容相同的文件不会重复渲染.
+     *
+     * @param dotFilePath     dot文件路径
+     * @param outputImagePath 输出文件路径
+     * @return 渲染完成后得到输出路径的future
+     */
+    public CompletableFuture<Path> renderAsync(final String dotFilePath,
+                                               final String outputImagePath) {
+        return renderer().render(
+                Paths.get(dotFilePath), Paths.get(outputImagePath));
+    }
+
+    /**
+     * 获取共享的渲染服务，首次使用时创建.
+     *
+     * @return 渲染服务
+     */
+    private static synchronized GraphRenderer renderer() {
+        if (renderer == null) {
+            renderer = new GraphRenderer();
+        }
+        return renderer;
+    }
+
+    /**
+     * 关闭共享的渲染服务，等待已提交的渲染完成.
+     */
+    public static synchronized void shutdownRenderer() {
+        if (renderer != null) {
+            renderer.close();
+            renderer = null;
         }
     }
 }
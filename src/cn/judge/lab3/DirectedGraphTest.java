@@ -1,9 +1,50 @@
 package cn.judge.lab3;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
 
 public class DirectedGraphTest {
     private DirectedGraph graph;
@@ -26,6 +67,1084 @@ public class DirectedGraphTest {
         printTestResult("java", "java", "The bridge words from \"java\" to \"java\" are: hello and world.", graph.queryBridgeWords("java", "java"));
     }
 
+    @Test
+    public void testFrozenGraphQueryBridgeWords() {
+        graph.buildGraphFromText("hello world java hello java world zyt hello world tyz hello");
+        CompactGraph compact = graph.freeze();
+
+        printTestResult("hello", "world", graph.queryBridgeWords("hello", "world"), compact.queryBridgeWords("hello", "world"));
+        printTestResult("world", "hello", graph.queryBridgeWords("world", "hello"), compact.queryBridgeWords("world", "hello"));
+        printTestResult("java", "java", graph.queryBridgeWords("java", "java"), compact.queryBridgeWords("java", "java"));
+        assertEquals(Integer.valueOf(3), compact.dijkstra("hello", "zyt").getSecond());
+    }
+
+    @Test
+    public void testBridgeIndexMatchesListScan() {
+        // "the"夹在随机单词之间，前驱和后继都很多；"zz"没有前驱
+        Random random = new Random(11);
+        StringBuilder text = new StringBuilder("zz ");
+        for (String word : randomText(random, 6000, 18).split(" ")) {
+            text.append(random.nextInt(3) == 0 ? "the " : "").append(word).append(' ');
+        }
+        graph.buildGraphFromText(text.toString());
+        CompactGraph compact = graph.freeze();
+        BridgeIndex index = new BridgeIndex(compact);
+        int n = compact.nodeCount();
+        int hubs = 0;
+        for (int v = 0; v < n; v++) {
+            if (compact.inDegree(v) >= BridgeIndex.MIN_HUB_IN_DEGREE && compact.inDegree(v) * 32L >= n) {
+                hubs++;
+            }
+        }
+        assertTrue(hubs > 0 && hubs < n);
+        int empty = 0;
+        int skewed = 0;
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                List<String> expected = new ArrayList<>();
+                for (int e = compact.edgeStart(from); e < compact.edgeEnd(from); e++) {
+                    if (compact.hasEdge(compact.target(e), to)) {
+                        expected.add(compact.word(compact.target(e)));
+                    }
+                }
+                assertEquals(expected, index.bridgeWords(from, to));
+                empty += expected.isEmpty() ? 1 : 0;
+                // 一侧比另一侧长得多时求交集主要靠倍增跳过
+                int shorter = Math.min(compact.outDegree(from), compact.inDegree(to));
+                int longer = Math.max(compact.outDegree(from), compact.inDegree(to));
+                skewed += shorter > 0 && longer >= 16 * shorter && !expected.isEmpty() ? 1 : 0;
+            }
+        }
+        assertTrue(empty > 0 && skewed > 0);
+        assertEquals(List.of(), index.bridgeWords(compact.id("the"), compact.id("zz")));
+    }
+
+    @Test
+    public void testEdgeWeightsMatchHashMap() {
+        EdgeWeights edges = new EdgeWeights();
+        Map<Integer, Integer> expected = new HashMap<>();
+        List<Integer> firstSeen = new ArrayList<>();
+        Random random = new Random(12);
+        // 目标编号相差很大且有连续段，出边数逐渐超过顺序查找的上限并多次扩容
+        for (int i = 0; i < 3000; i++) {
+            int target = i < 200 ? i / 4 : random.nextInt(3) == 0 ? random.nextInt(100) * 1_000_003 : random.nextInt(100);
+            int weight = random.nextInt(4) == 0 ? 1 + random.nextInt(5) : 1;
+            boolean created = !expected.containsKey(target);
+            if (created) {
+                firstSeen.add(target);
+            }
+            expected.merge(target, weight, Integer::sum);
+            assertEquals(created, edges.add(target, weight));
+            if (i % 7 != 0 && i > 300) {
+                continue;
+            }
+            assertEquals(expected.size(), edges.size());
+            for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+                assertEquals((int) entry.getValue(), edges.weight(entry.getKey()));
+            }
+            assertEquals(0, edges.weight(-1));
+            assertEquals(0, edges.weight(1_000_003 * 100 + 1));
+            boolean[] seen = new boolean[edges.size()];
+            for (int e = 0; e < edges.size(); e++) {
+                assertEquals((int) firstSeen.get(e), edges.target(e));
+                assertEquals((int) expected.get(firstSeen.get(e)), edges.weightAt(e));
+                int ranked = edges.ranked(e);
+                assertFalse(seen[ranked]);
+                seen[ranked] = true;
+                if (e > 0) {
+                    assertTrue(edges.weightAt(edges.ranked(e - 1)) >= edges.weightAt(ranked));
+                }
+            }
+        }
+        assertTrue(edges.size() > 150);
+    }
+
+    @Test
+    public void testDotExporterHighlightsOnlyPathEdges() throws Exception {
+        graph.buildGraphFromText("hello world java hello java world zyt hello world tyz hello");
+        Map<Node, List<Node>> adjacency = graph.getAdjacencyList();
+        List<Node> first = graph.dijkstra(graph.nodeOrCreate("hello"), graph.nodeOrCreate("zyt")).getFirst();
+        List<Node> second = graph.dijkstra(graph.nodeOrCreate("java"), graph.nodeOrCreate("tyz")).getFirst();
+        assertTrue(first.size() > 2 && second.size() > 2);
+        // 两条路径共用的边保持第一条路径的颜色
+        Map<String, String> colors = new HashMap<>();
+        for (int i = 0; i < second.size() - 1; i++) {
+            colors.put(second.get(i).getLabel() + "->" + second.get(i + 1).getLabel(), DotExporter.PALETTE[1]);
+        }
+        for (int i = 0; i < first.size() - 1; i++) {
+            colors.put(first.get(i).getLabel() + "->" + first.get(i + 1).getLabel(), DotExporter.PALETTE[0]);
+        }
+        StringWriter out = new StringWriter();
+        new DotExporter().highlight(first).highlight(null).highlight(second).write(adjacency, out);
+        List<String> lines = List.of(out.toString().split("\n"));
+        assertEquals("digraph G {", lines.get(0));
+        assertEquals("}", lines.get(lines.size() - 1));
+        int edges = 0;
+        int highlighted = 0;
+        for (Map.Entry<Node, List<Node>> entry : adjacency.entrySet()) {
+            for (Node to : entry.getValue()) {
+                String from = entry.getKey().getLabel();
+                String line = "\t\"" + from + "\" -> \"" + to.getLabel() + "\" [label=\"" + entry.getKey().weightTo(to) + "\"";
+                String color = colors.get(from + "->" + to.getLabel());
+                line += color == null ? "];" : ", color=\"" + color + "\", penwidth=2];";
+                assertTrue(line, lines.contains(line));
+                edges++;
+                highlighted += color == null ? 0 : 1;
+            }
+        }
+        assertEquals(edges + 2, lines.size());
+        assertEquals(colors.size(), highlighted);
+        assertEquals(highlighted, lines.stream().filter(line -> line.contains("penwidth")).count());
+    }
+
+    @Test
+    public void testAppendTextMatchesSingleBuild() {
+        graph.appendText("hello world java hello");
+        long version = graph.version();
+        graph.appendText(" java world zyt hello world tyz hello");
+        DirectedGraph whole = new DirectedGraph();
+        whole.buildGraphFromText("hello world java hello java world zyt hello world tyz hello");
+
+        assertTrue(graph.version() > version);
+        assertFalse(graph.getAdjacencyList().containsKey(null));
+        printTestResult("hello", "java", whole.queryBridgeWords("hello", "java"), graph.queryBridgeWords("hello", "java"));
+        printTestResult("world", "hello", whole.queryBridgeWords("world", "hello"), graph.queryBridgeWords("world", "hello"));
+        assertEquals(whole.getAdjacencyList().toString(), graph.getAdjacencyList().toString());
+    }
+
+    @Test
+    public void testConcurrentReadsDuringIngestion() throws Exception {
+        ConcurrentGraph shared = new ConcurrentGraph(graph, 1);
+        int appends = 2000;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            Thread reader = new Thread(() -> {
+                long lastVersion = -1;
+                try {
+                    while (!done.get()) {
+                        CompactGraph snapshot = shared.snapshot();
+                        assertTrue(snapshot.version() >= lastVersion);
+                        lastVersion = snapshot.version();
+                        // 每次追加10个单词，一致的快照中边权之和为0或加1后是10的倍数
+                        long total = sumWeights(snapshot);
+                        assertTrue(total == 0 || (total + 1) % 10 == 0);
+                        if (snapshot.nodeCount() == 10) {
+                            assertEquals("The bridge words from \"w0\" to \"w2\" are: w1.",
+                                    shared.queryBridgeWords("w0", "w2"));
+                            assertEquals(Integer.valueOf(9), shared.shortestPath("w0", "w9").getSecond());
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+        for (int i = 0; i < appends; i++) {
+            shared.append("w0 w1 w2 w3 w4 w5 w6 w7 w8 w9");
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(appends * 10 - 1, sumWeights(shared.snapshot()));
+    }
+
+    @Test
+    public void testMetricsCountOperations() {
+        boolean wasEnabled = GraphMetrics.isEnabled();
+        GraphMetrics.setEnabled(true);
+        try {
+            graph.buildGraphFromText("hello world java hello java world zyt hello world tyz hello");
+            graph.appendText("world hello");
+            graph.queryBridgeWords("hello", "world");
+            graph.queryBridgeWords("world", "hello");
+            GraphMetrics metrics = graph.metrics();
+            assertEquals(1, metrics.calls(GraphMetrics.Operation.BUILD_GRAPH));
+            assertEquals(1, metrics.calls(GraphMetrics.Operation.APPEND_TEXT));
+            assertEquals(2, metrics.calls(GraphMetrics.Operation.QUERY_BRIDGE_WORDS));
+            assertEquals(0, metrics.errors(GraphMetrics.Operation.QUERY_BRIDGE_WORDS));
+            assertEquals(5, metrics.nodeCount());
+            assertEquals(graph.freeze().edgeCount(), metrics.edgeCount());
+            assertTrue(metrics.heapBytes() > 0);
+            assertTrue(metrics.percentileNanos(GraphMetrics.Operation.QUERY_BRIDGE_WORDS, 0.99) > 0);
+        } finally {
+            GraphMetrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    public void testQueryCacheInvalidatedByChanges() {
+        graph.buildGraphFromText("hello world java hello java world zyt hello world tyz hello");
+        assertEquals("No bridge words from \"java\" to \"hello\"!", graph.queryBridgeWords("java", "hello"));
+        assertEquals("No bridge words from \"java\" to \"hello\"!", graph.queryBridgeWords("java", "hello"));
+        assertTrue(graph.queryCacheStatistics().startsWith("bridge words: entries: 1, "));
+        assertTrue(graph.queryCacheStatistics().contains("hits: 1, misses: 1"));
+
+        graph.addEdge(graph.nodeOrCreate("java"), graph.nodeOrCreate("zyt"));
+        assertEquals("The bridge words from \"java\" to \"hello\" are: zyt.", graph.queryBridgeWords("java", "hello"));
+
+        graph.appendText("java python hello");
+        assertEquals("The bridge words from \"java\" to \"hello\" are: zyt and python.", graph.queryBridgeWords("java", "hello"));
+    }
+
+    @Test
+    public void testQueryCacheEvictsLeastRecentlyUsed() {
+        QueryCache<String> cache = new QueryCache<>(2, Long.MAX_VALUE, QueryCache::stringBytes);
+        cache.put(1, "a", "b", "ab");
+        cache.put(1, "b", "c", "bc");
+        assertEquals("ab", cache.get(1, "a", "b"));
+        cache.put(1, "c", "d", "cd");
+        assertEquals(null, cache.get(1, "b", "c"));
+        assertEquals("ab", cache.get(1, "a", "b"));
+        assertEquals(1, cache.evictionCount());
+        assertEquals(null, cache.get(0, "a", "b"));
+        cache.put(0, "x", "y", "stale");
+        assertEquals(null, cache.get(1, "x", "y"));
+        assertEquals(null, cache.get(2, "a", "b"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testTopNeighborsByWeight() {
+        graph.buildGraphFromText("hello world java hello java world zyt hello world tyz hello");
+
+        assertEquals(3, graph.inDegree("hello"));
+        assertEquals(2, graph.outDegree("hello"));
+        assertEquals(-1, graph.inDegree("python"));
+        assertEquals(List.of("world", "java"), graph.topSuccessors("hello", 5));
+        assertEquals(List.of("world"), graph.topSuccessors("hello", 1));
+        assertEquals(List.of("hello", "java"), graph.topPredecessors("world", 2));
+        assertEquals(List.of(), graph.topPredecessors("python", 3));
+
+        graph.appendText("java java java java");
+        assertEquals("java", graph.topSuccessors("java", 1).get(0));
+        assertEquals(List.of("java", "hello", "world"), graph.topPredecessors("java", 3));
+    }
+
+    @Test
+    public void testPageRank() {
+        graph.buildGraphFromText("hello world java hello java world zyt hello world tyz hello");
+
+        PageRank ranks = graph.pageRank(1e-12, 200, 2);
+        double total = 0;
+        for (String word : List.of("hello", "world", "java", "zyt", "tyz")) {
+            total += ranks.rank(word);
+        }
+        assertTrue(ranks.converged());
+        assertEquals(1.0, total, 1e-9);
+        assertEquals(0.0, ranks.rank("python"), 0.0);
+        assertEquals(List.of("hello", "world"), ranks.top(2));
+    }
+
+    @Test
+    public void testPageRankIndependentOfThreadCount() {
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            // 单词只能由字母组成，把编号写成两个字母
+            int word = random.nextInt(600);
+            text.append(' ').append((char) ('a' + word % 26)).append((char) ('a' + word / 26));
+        }
+        graph.buildGraphFromText(text.toString());
+        CompactGraph compact = graph.freeze();
+        // 每块16个节点，部分和分布在几十个块中
+        PageRank single = new PageRank(compact, PageRank.DEFAULT_DAMPING, 1e-12, 200, 1, 16).compute();
+        PageRank parallel = new PageRank(compact, PageRank.DEFAULT_DAMPING, 1e-12, 200, 4, 16).compute();
+        PageRank oneBlock = new PageRank(compact, PageRank.DEFAULT_DAMPING, 1e-12, 200, 4, compact.nodeCount()).compute();
+        assertTrue(compact.nodeCount() > 16 * 30);
+        assertTrue(single.converged());
+        assertEquals(single.iterations(), parallel.iterations());
+        double total = 0;
+        for (int id = 0; id < compact.nodeCount(); id++) {
+            assertEquals(Double.doubleToLongBits(single.rank(id)), Double.doubleToLongBits(parallel.rank(id)));
+            assertEquals(oneBlock.rank(id), single.rank(id), 1e-12);
+            total += single.rank(id);
+        }
+        assertEquals(1.0, total, 1e-9);
+    }
+
+    @Test
+    public void testParallelBuildMatchesSequential() {
+        // 随机单词之间夹着长短不一的分隔符，段的切分点会落在单词中间或一串分隔符上
+        Random random = new Random(11);
+        String[] separators = {" ", "  ", ", ", ".\n", " -- ", "!?\t\t", "123"};
+        StringBuilder text = new StringBuilder(",, ");
+        for (int i = 0; i < 3000; i++) {
+            int length = 1 + random.nextInt(random.nextInt(10) == 0 ? 20 : 3);
+            for (int j = 0; j < length; j++) {
+                char c = (char) ('a' + random.nextInt(6));
+                text.append(random.nextInt(8) == 0 ? Character.toUpperCase(c) : c);
+            }
+            text.append(separators[random.nextInt(separators.length)]);
+        }
+        graph.buildGraphFromText(text.toString());
+        DirectedGraph withTail = new DirectedGraph();
+        withTail.buildGraphFromText(text + " tail");
+        for (int segmentLength : new int[] {1, 5, 37, 1000, ParallelGraphBuilder.MIN_SEGMENT_LENGTH}) {
+            for (int threads : new int[] {1, 2, 3, 8}) {
+                ParallelGraphBuilder builder = new ParallelGraphBuilder(threads, segmentLength);
+                DirectedGraph parallel = new DirectedGraph();
+                builder.build(text, parallel);
+                assertSameGraph(graph, parallel);
+                assertTrue(segmentLength > 1000 || builder.segmentBoundaries(text).length > threads);
+                // 追加的文本接在最后一个单词之后
+                parallel.appendText("tail");
+                assertSameGraph(withTail, parallel);
+            }
+        }
+    }
+
+    @Test
+    public void testChunkedFileMatchesText() throws Exception {
+        // 非ASCII字符和数字都是分隔符，块边界会落在单词中间、分隔符中间和多字节字符中间
+        String text = "Hello, world!! java\nHELLO   java-world zyt\r\nhello 2021 World. tyz\u00e9hello\u4e2d\u6587java\n";
+        graph.buildGraphFromText(text);
+        Path file = Files.createTempFile("lab3", ".txt");
+        try {
+            Files.writeString(file, text);
+            for (int chunkSize : new int[] {1, 2, 3, 5, 7, 64}) {
+                DirectedGraph chunked = new DirectedGraph();
+                chunked.buildGraphFromFile(file, chunkSize);
+                assertSameGraph(graph, chunked);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testGeneratedTextIndependentOfChunkingAndThreads() throws Exception {
+        graph.buildGraphFromText("a x b a y b a z b b x c c y a a x a");
+        BridgeIndex index = new BridgeIndex(graph.freeze());
+        // 单词之间的空白长短不一，夹杂图中没有的单词
+        Random random = new Random(5);
+        String[] words = {"a", "b", "c", "python", "A"};
+        String[] spaces = {" ", "  ", "\n", " \t ", "\r\n"};
+        StringBuilder input = new StringBuilder(" ");
+        for (int i = 0; i < 2000; i++) {
+            input.append(words[random.nextInt(words.length)]).append(spaces[random.nextInt(spaces.length)]);
+        }
+        input.append("a b");
+        String text = input.toString();
+        String expected = generate(new StringReader(text), index, 42);
+        assertTrue(expected.contains(" x ") && expected.contains(" y ") && expected.contains(" z "));
+        assertEquals(expected, generate(new StringReader(text), index, 42));
+        assertFalse(expected.equals(generate(new StringReader(text), index, 43)));
+        // 每次只读出一到三个字符，单词被读取边界切开
+        Reader trickle = new FilterReader(new StringReader(text)) {
+            private final Random lengths = new Random(1);
+
+            @Override
+            public int read(char[] buf, int off, int len) throws IOException {
+                return super.read(buf, off, Math.min(len, 1 + lengths.nextInt(3)));
+            }
+        };
+        assertEquals(expected, generate(trickle, index, 42));
+        for (int chunkLength : new int[] {1, 3, 50, 1000, TextGenerator.CHUNK_LENGTH}) {
+            for (int threads : new int[] {1, 2, 4}) {
+                assertEquals(expected, new TextGenerator(index, chunkLength).generateParallel(text, threads, 42));
+            }
+        }
+    }
+
+    @Test
+    public void testPathEngineSearchMatchesBaseline() {
+        // 单词表小时边权大，桶式队列要跨越更多的桶；"qa"只出现在开头，从其他单词都到不了
+        for (int letters : new int[] {3, 6, 20}) {
+            DirectedGraph random = new DirectedGraph();
+            random.buildGraphFromText("qa " + randomText(new Random(letters), 3000, letters));
+            CompactGraph compact = random.freeze();
+            PathEngine engine = compact.borrowEngine();
+            try {
+                // 同一个引擎依次搜索所有起点，检验纪元标记让上一次的结果失效
+                for (int source = 0; source < compact.nodeCount(); source++) {
+                    int[] expected = baselineDistances(compact, source);
+                    engine.search(source);
+                    for (int v = 0; v < compact.nodeCount(); v++) {
+                        assertEquals(expected[v], engine.distance(v));
+                        int previous = engine.predecessor(v);
+                        if (v == source || expected[v] == PathEngine.UNREACHABLE) {
+                            assertEquals(-1, previous);
+                        } else {
+                            assertEquals(expected[v], expected[previous] + edgeWeight(compact, previous, v));
+                        }
+                    }
+                }
+            } finally {
+                compact.releaseEngine(engine);
+            }
+        }
+    }
+
+    @Test
+    public void testPointToPointSearchMatchesBaseline() {
+        for (int letters : new int[] {3, 6, 20}) {
+            DirectedGraph random = new DirectedGraph();
+            random.buildGraphFromText("qa " + randomText(new Random(letters), 3000, letters));
+            CompactGraph compact = random.freeze();
+            int unreachable = compact.id("qa");
+            Random pairs = new Random(letters);
+            PathEngine engine = compact.borrowEngine();
+            try {
+                for (int i = 0; i < 300; i++) {
+                    int from = pick(pairs, compact, i % 11 == 0 ? unreachable : -1);
+                    int to = i % 13 == 0 ? from : pick(pairs, compact, i % 7 == 0 ? unreachable : -1);
+                    int expected = baselineDistances(compact, from)[to];
+                    int distance = engine.search(from, to);
+                    assertEquals(expected, distance);
+                    assertValidPath(compact, engine, from, to, distance);
+                    distance = engine.bidirectional(from, to);
+                    assertEquals(expected, distance);
+                    assertValidPath(compact, engine, from, to, distance);
+                }
+            } finally {
+                compact.releaseEngine(engine);
+            }
+        }
+    }
+
+    @Test
+    public void testShortestPathsToAllWords() {
+        // "ruby"没有前驱，从其他单词都无法到达
+        graph.buildGraphFromText("ruby hello world java hello java world zyt hello world tyz hello");
+        CompactGraph compact = graph.freeze();
+        PrintStream stdout = System.out;
+        InputStream stdin = System.in;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+            System.setIn(new ByteArrayInputStream("N\n".getBytes(StandardCharsets.UTF_8)));
+            assertEquals("", graph.calcShortestPath("hello", ""));
+        } finally {
+            System.setOut(stdout);
+            System.setIn(stdin);
+        }
+        List<String> lines = new ArrayList<>(List.of(printed.toString(StandardCharsets.UTF_8).split("\n")));
+        assertEquals("Do you want to see a path in the graph: Y/N", lines.remove(lines.size() - 1));
+        int[] distances = baselineDistances(compact, compact.id("hello"));
+        // 除起点外每个单词一行，按编号顺序，可达的单词依次编号
+        assertEquals(compact.nodeCount() - 1, lines.size());
+        int line = 0;
+        int numbered = 1;
+        for (int id = 0; id < compact.nodeCount(); id++) {
+            String word = compact.word(id);
+            if (word.equals("hello")) {
+                continue;
+            }
+            String text = lines.get(line++);
+            if (distances[id] == PathEngine.UNREACHABLE) {
+                assertEquals("No path from hello to " + word, text);
+                continue;
+            }
+            String prefix = numbered++ + ":From \"hello\" to \"" + word + "\": ";
+            String suffix = " (length: " + distances[id] + ")";
+            assertTrue(text, text.startsWith(prefix) && text.endsWith(suffix));
+            String[] path = text.substring(prefix.length(), text.length() - suffix.length()).split(" -> ");
+            assertEquals("hello", path[0]);
+            assertEquals(word, path[path.length - 1]);
+            int length = 0;
+            for (int k = 1; k < path.length; k++) {
+                length += edgeWeight(compact, compact.id(path[k - 1]), compact.id(path[k]));
+            }
+            assertEquals(distances[id], length);
+        }
+        assertTrue(lines.contains("No path from hello to ruby"));
+        assertEquals(compact.nodeCount() - 1, numbered);
+    }
+
+    @Test
+    public void testLandmarkSearchMatchesDijkstra() throws Exception {
+        // "qa"只出现在开头，没有单词能到达它
+        graph.buildGraphFromText("qa " + randomText(new Random(3), 4000, 12));
+        CompactGraph compact = graph.freeze();
+        LandmarkIndex landmarks = LandmarkIndex.build(compact, 4, 2);
+        Random random = new Random(4);
+        PathEngine engine = compact.borrowEngine();
+        try {
+            for (int i = 0; i < 300; i++) {
+                int from = random.nextInt(compact.nodeCount());
+                int to = i % 50 == 0 ? from : i % 7 == 0 ? compact.id("qa") : random.nextInt(compact.nodeCount());
+                int distance = engine.aStar(from, to, landmarks);
+                assertEquals(baselineDistances(compact, from)[to], distance);
+                assertValidPath(compact, engine, from, to, distance);
+            }
+        } finally {
+            compact.releaseEngine(engine);
+        }
+
+        // 地标索引随快照保存和加载
+        graph.buildLandmarkIndex(4, 2);
+        Path snapshot = Files.createTempFile("lab3", ".snapshot");
+        Path landmarkFile = DirectedGraph.landmarkFile(snapshot);
+        try {
+            graph.saveSnapshot(snapshot, new byte[GraphSnapshot.HASH_BYTES]);
+            assertTrue(Files.exists(landmarkFile));
+            DirectedGraph loaded = new DirectedGraph();
+            loaded.loadSnapshot(snapshot);
+            Node from = loaded.nodeOrCreate(compact.word(0));
+            Node to = loaded.nodeOrCreate(compact.word(compact.nodeCount() - 1));
+            assertEquals(baselineDistances(compact, 0)[compact.nodeCount() - 1],
+                    (int) loaded.dijkstra(from, to).getSecond());
+            assertTrue(loaded.landmarkStatistics().startsWith("queries: 1,"));
+            // 没有地标索引时保存快照会删除旧的索引文件
+            loaded.appendText("qa");
+            loaded.saveSnapshot(snapshot, new byte[GraphSnapshot.HASH_BYTES]);
+            assertFalse(Files.exists(landmarkFile));
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(landmarkFile);
+        }
+    }
+
+    @Test
+    public void testAllPairsExportIndependentOfAlgorithm() throws Exception {
+        graph.buildGraphFromText("qa " + randomText(new Random(5), 3000, 14));
+        CompactGraph compact = graph.freeze();
+        Path matrix = Files.createTempFile("lab3", ".csv");
+        Path bySource = Files.createTempFile("lab3", ".csv");
+        try {
+            for (int cutoff : new int[] {-1, 0, 2, 5}) {
+                AllPairsExporter exporter = new AllPairsExporter(compact, 2, cutoff);
+                long pairs = exporter.export(matrix, AllPairsExporter.Format.CSV, true);
+                assertEquals(pairs, exporter.export(bySource, AllPairsExporter.Format.CSV, false));
+                assertEquals(Files.readString(matrix), Files.readString(bySource));
+                assertEquals(pairs + 1, Files.readAllLines(matrix).size());
+            }
+        } finally {
+            Files.deleteIfExists(matrix);
+            Files.deleteIfExists(bySource);
+        }
+        // 约200个单词、3000条边以内的稀疏图逐个起点搜索
+        assertFalse(new AllPairsExporter(compact, 1, -1).prefersMatrix());
+        // 完全图上Floyd-Warshall更快
+        StringBuilder dense = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 40; j++) {
+                dense.append("w").append((char) ('a' + i / 26)).append((char) ('a' + i % 26)).append(' ');
+                dense.append("w").append((char) ('a' + j / 26)).append((char) ('a' + j % 26)).append(' ');
+            }
+        }
+        DirectedGraph complete = new DirectedGraph();
+        complete.buildGraphFromText(dense.toString());
+        assertTrue(new AllPairsExporter(complete.freeze(), 1, -1).prefersMatrix());
+    }
+
+    @Test
+    public void testLeadingSeparatorsProduceNoEmptyWord() {
+        graph.buildGraphFromText("  ...Hello, world! java\nHELLO");
+
+        assertEquals(3, graph.nodeCount());
+        assertEquals(-1, graph.inDegree(""));
+        assertEquals(1, graph.inDegree("hello"));
+        graph.appendText("!! world");
+        assertEquals(3, graph.nodeCount());
+        assertEquals("The bridge words from \"java\" to \"world\" are: hello.", graph.queryBridgeWords("java", "world"));
+    }
+
+    @Test
+    public void testConcurrentRandomWalkFollowsWeights() {
+        graph.buildGraphFromText("a b a b a b a b a b a b a b a b a b a c");
+        ConcurrentGraph shared = new ConcurrentGraph(graph);
+        Random random = new Random(42);
+        int toB = 0;
+        int toC = 0;
+        for (int i = 0; i < 3000; i++) {
+            List<String> walk = shared.randomWalk(random);
+            // c没有出边，不出现在游走中，从a走到c的游走只有一个单词
+            if (!walk.isEmpty() && walk.get(0).equals("a")) {
+                if (walk.size() > 1) {
+                    toB++;
+                } else {
+                    toC++;
+                }
+            }
+        }
+        // a到b的边权为9，到c的为1
+        assertTrue(toB + toC > 500);
+        assertEquals(0.9, (double) toB / (toB + toC), 0.05);
+        assertTrue(shared.snapshot().walkGenerator() == shared.snapshot().walkGenerator());
+    }
+
+    @Test
+    public void testWalkGeneratorFollowsWeightsAndSeed() throws Exception {
+        // hub到b、c、d、e、f的边权依次为1、2、3、4、6
+        StringBuilder text = new StringBuilder();
+        String[] targets = {"b", "c", "d", "e", "f"};
+        int[] weights = {1, 2, 3, 4, 6};
+        for (int i = 0; i < targets.length; i++) {
+            for (int k = 0; k < weights[i]; k++) {
+                text.append("hub ").append(targets[i]).append(' ');
+            }
+        }
+        graph.buildGraphFromText(text + randomText(new Random(6), 2000, 8));
+        CompactGraph compact = graph.freeze();
+        WalkGenerator generator = compact.walkGenerator();
+        int hub = compact.id("hub");
+        int[] counts = new int[compact.nodeCount()];
+        SplittableRandom random = new SplittableRandom(8);
+        int samples = 160000;
+        for (int i = 0; i < samples; i++) {
+            counts[generator.next(hub, random)]++;
+        }
+        for (int i = 0; i < targets.length; i++) {
+            assertEquals(weights[i] / 16.0, (double) counts[compact.id(targets[i])] / samples, 0.005);
+        }
+        for (int v = 0; v < compact.nodeCount(); v++) {
+            int start = compact.edgeStart(v);
+            long total = 0;
+            for (int e = start; e < compact.edgeEnd(v); e++) {
+                total += compact.weight(e);
+            }
+            if (v != hub && total > 0) {
+                // 随机文本中的节点：每条边被选中的次数与边权成正比
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < 20000; i++) {
+                    counts[generator.next(v, random)]++;
+                }
+                for (int e = start; e < compact.edgeEnd(v); e++) {
+                    assertEquals((double) compact.weight(e) / total, counts[compact.target(e)] / 20000.0, 0.02);
+                }
+            }
+        }
+
+        // 随机游走与线程数无关，前若干条游走与总条数无关
+        Path single = Files.createTempFile("lab3", ".walks");
+        Path parallel = Files.createTempFile("lab3", ".walks");
+        try {
+            long words = generator.generate(single, WalkGenerator.BATCH_SIZE + 100, 12, 9, 1);
+            assertEquals(words, generator.generate(parallel, WalkGenerator.BATCH_SIZE + 100, 12, 9, 3));
+            assertEquals(Files.readString(single), Files.readString(parallel));
+            List<String> lines = Files.readAllLines(single);
+            assertEquals(WalkGenerator.BATCH_SIZE + 100, lines.size());
+            generator.generate(parallel, 50, 12, 9, 2);
+            assertEquals(lines.subList(0, 50), Files.readAllLines(parallel));
+            generator.generate(parallel, 50, 12, 10, 2);
+            assertFalse(lines.subList(0, 50).equals(Files.readAllLines(parallel)));
+            for (int i = 0; i < lines.size(); i++) {
+                String[] walk = lines.get(i).split(" ");
+                assertTrue(walk.length <= 12);
+                assertEquals(compact.word(i % compact.nodeCount()), walk[0]);
+                for (int k = 1; k < walk.length; k++) {
+                    assertTrue(compact.hasEdge(compact.id(walk[k - 1]), compact.id(walk[k])));
+                }
+            }
+            long[][] invalid = {{-1, 12, 1}, {10, 0, 1}, {10, 12, 0}};
+            for (long[] arguments : invalid) {
+                try {
+                    generator.generate(parallel, arguments[0], (int) arguments[1], 9, (int) arguments[2]);
+                    fail("invalid arguments should be rejected");
+                } catch (IllegalArgumentException e) {
+                    assertTrue(e.getMessage().contains("must"));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(single);
+            Files.deleteIfExists(parallel);
+        }
+    }
+
+    @Test
+    public void testSnapshotRejectsCorruptLastWord() throws Exception {
+        graph.buildGraphFromText("hello world java hello");
+        Path snapshot = Files.createTempFile("lab3", ".snapshot");
+        try {
+            graph.saveSnapshot(snapshot, new byte[GraphSnapshot.HASH_BYTES]);
+            assertEquals(3, GraphSnapshot.load(snapshot).graph().nodeCount());
+            // 头部中文本最后一个单词的编号位于魔数、格式版本、哈希值和图版本号之后
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(4).putInt(0, -5), 4 + 4 + GraphSnapshot.HASH_BYTES + 8);
+            }
+            try {
+                GraphSnapshot.load(snapshot);
+                fail("corrupt header should be rejected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().endsWith("is corrupted"));
+            }
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testCorruptSnapshotReportedToCaller() throws Exception {
+        Path text = Files.createTempFile("lab3", ".txt");
+        Path snapshot = Files.createTempFile("lab3", ".snapshot");
+        try {
+            Files.writeString(text, "hello world java hello java world zyt hello world tyz hello");
+            Files.delete(snapshot);
+            assertFalse(graph.buildGraphFromFile(text, snapshot));
+            assertTrue(graph.snapshotFailure() == null);
+            DirectedGraph loaded = new DirectedGraph();
+            assertTrue(loaded.buildGraphFromFile(text, snapshot));
+            assertTrue(loaded.snapshotFailure() == null);
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(4).putInt(0, -5), 4 + 4 + GraphSnapshot.HASH_BYTES + 8);
+            }
+            // 快照与文本的哈希值仍然匹配，但无法加载：从文本重新构建并写出新快照
+            DirectedGraph rebuilt = new DirectedGraph();
+            assertFalse(rebuilt.buildGraphFromFile(text, snapshot));
+            assertTrue(rebuilt.snapshotFailure().getMessage().endsWith("is corrupted"));
+            assertEquals(graph.getAdjacencyList().toString(), rebuilt.getAdjacencyList().toString());
+            assertTrue(rebuilt.buildGraphFromFile(text, snapshot));
+            assertTrue(rebuilt.snapshotFailure() == null);
+        } finally {
+            Files.deleteIfExists(text);
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(DirectedGraph.landmarkFile(snapshot));
+        }
+    }
+
+    @Test
+    public void testCreateNodeReturnsExistingNode() {
+        graph.buildGraphFromText("hello world java hello");
+        Node hello = graph.createNode("hello");
+
+        assertTrue(hello == graph.nodeOrCreate("hello"));
+        assertEquals(3, graph.nodeCount());
+        graph.createNode("python");
+        CompactGraph compact = graph.freeze();
+        assertEquals(4, compact.nodeCount());
+        assertEquals(graph.nodeOrCreate("python").getId(), compact.id("python"));
+        printTestResult("hello", "java", "The bridge words from \"hello\" to \"java\" are: world.", compact.queryBridgeWords("hello", "java"));
+    }
+
+    @Test
+    public void testPathEnginesReusedAcrossThreads() throws Exception {
+        graph.buildGraphFromText("hello world java hello zyt tyz zyt python");
+        CompactGraph compact = graph.freeze();
+        // 每个请求一个新线程，引擎归还后应被下一个请求借走，而不是每个线程新建
+        for (int i = 0; i < 20; i++) {
+            AtomicReference<Integer> distance = new AtomicReference<>();
+            Thread request = new Thread(() -> distance.set(compact.dijkstra("hello", "python").getSecond()));
+            request.start();
+            request.join();
+            assertEquals(Integer.valueOf(2), distance.get());
+        }
+        Thread tree = new Thread(() -> compact.shortestPathTree("java"));
+        tree.start();
+        tree.join();
+        assertEquals(1, compact.enginesCreated());
+    }
+
+    @Test
+    public void testReachability() {
+        graph.buildGraphFromText("hello world java hello zyt tyz zyt python");
+
+        assertTrue(graph.isReachable("hello", "python"));
+        assertTrue(graph.isReachable("java", "world"));
+        assertTrue(graph.isReachable("python", "python"));
+        assertFalse(graph.isReachable("zyt", "hello"));
+        assertFalse(graph.isReachable("python", "tyz"));
+        assertFalse(graph.isReachable("ruby", "hello"));
+        assertEquals("No road!", graph.calcShortestPath("tyz", "java"));
+        assertEquals(null, graph.dijkstra(graph.nodeOrCreate("python"), graph.nodeOrCreate("hello")).getFirst());
+
+        graph.appendText("python hello");
+        assertTrue(graph.isReachable("zyt", "hello"));
+        assertEquals(Integer.valueOf(3), graph.dijkstra(graph.nodeOrCreate("tyz"), graph.nodeOrCreate("hello")).getSecond());
+    }
+
+    @Test
+    public void testQueryServerEndpoints() throws Exception {
+        graph.buildGraphFromText("hello world java hello zyt tyz zyt python");
+        ConcurrentGraph shared = new ConcurrentGraph(graph, 1000);
+        HttpClient client = HttpClient.newHttpClient();
+        try (QueryServer server = new QueryServer(shared, new InetSocketAddress(0), 4)) {
+            server.start();
+            String base = "http://localhost:" + server.port();
+
+            HttpResponse<String> response = get(client, base + "/bridge?word1=hello&word2=java");
+            assertEquals(200, response.statusCode());
+            assertEquals("The bridge words from \"hello\" to \"java\" are: world.", response.body());
+            response = get(client, base + "/bridge?word1=hello");
+            assertEquals(400, response.statusCode());
+            assertEquals("Missing parameter \"word2\"", response.body());
+
+            response = get(client, base + "/path?from=hello&to=python");
+            assertEquals(200, response.statusCode());
+            assertEquals("The shortest path is: hello -> zyt -> python\nThe shortest path's len is: 2", response.body());
+            response = get(client, base + "/path?from=python&to=hello");
+            assertEquals(404, response.statusCode());
+            assertEquals("No road!", response.body());
+            response = get(client, base + "/path?from=ruby&to=hello");
+            assertEquals(404, response.statusCode());
+            assertEquals("No \"ruby\" in the graph!", response.body());
+
+            assertEquals("yes", get(client, base + "/reachable?from=hello&to=python").body());
+            assertEquals("no", get(client, base + "/reachable?from=zyt&to=hello").body());
+            assertEquals(404, get(client, base + "/reachable?from=hello&to=ruby").statusCode());
+
+            response = get(client, base + "/walk?seed=7");
+            assertEquals(200, response.statusCode());
+            assertEquals(String.join("\n", shared.randomWalk(new Random(7))), response.body());
+
+            // 追加的文本未达到发布间隔，发布之前查询仍然看到旧快照
+            long published = shared.snapshot().version();
+            response = post(client, base + "/append", "python hello");
+            assertEquals(202, response.statusCode());
+            assertEquals("Appended; published version: " + published + ", pending changes: "
+                    + (graph.version() - published), response.body());
+            assertEquals("no", get(client, base + "/reachable?from=zyt&to=hello").body());
+            assertEquals(400, get(client, base + "/append").statusCode());
+            response = post(client, base + "/publish", "");
+            assertEquals(200, response.statusCode());
+            assertEquals("Published version: " + graph.version(), response.body());
+            assertEquals("yes", get(client, base + "/reachable?from=zyt&to=hello").body());
+        }
+    }
+
+    @Test
+    public void testQueryServerRejectsWhenBusy() throws Exception {
+        graph.buildGraphFromText("hello world java hello");
+        ConcurrentGraph shared = new ConcurrentGraph(graph);
+        StringWriter expected = new StringWriter();
+        shared.generateNewText(new StringReader("hello java."), expected, 1);
+        HttpClient client = HttpClient.newHttpClient();
+        try (QueryServer server = new QueryServer(shared, new InetSocketAddress(0), 1)) {
+            server.start();
+            String base = "http://localhost:" + server.port();
+            try (Socket socket = new Socket("localhost", server.port())) {
+                // 请求体声明11个字节只先发送10个，/generate读取请求体时占着唯一的许可
+                OutputStream out = socket.getOutputStream();
+                out.write(("POST /generate?seed=1 HTTP/1.1\r\nHost: localhost\r\n"
+                        + "Connection: close\r\nContent-Length: 11\r\n\r\nhello java").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                HttpResponse<String> response = get(client, base + "/stats");
+                for (int i = 0; i < 500 && response.statusCode() != 503; i++) {
+                    Thread.sleep(10);
+                    response = get(client, base + "/stats");
+                }
+                assertEquals(503, response.statusCode());
+                assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+
+                out.write('.');
+                out.flush();
+                String generated = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(generated, generated.startsWith("HTTP/1.1 200"));
+                assertTrue(generated, generated.endsWith("\r\n\r\n" + expected));
+            }
+            assertEquals(200, get(client, base + "/stats").statusCode());
+        }
+    }
+
+    @Test
+    public void testRendererMergesCachesAndTimesOut() throws Exception {
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+        Path dir = Files.createTempDirectory("lab3-render");
+        Path calls = dir.resolve("calls");
+        Path pid = dir.resolve("pid");
+        // 桩渲染程序：记录每次调用，把DOT内容原样作为输出；内容含hang时一直不退出
+        Path stub = dir.resolve("dot.sh");
+        Files.writeString(stub, "#!/bin/sh\n"
+                + "echo \"$2\" >> '" + calls + "'\n"
+                + "if grep -q hang \"$2\"; then echo $$ > '" + pid + "'; exec sleep 60; fi\n"
+                + "sleep 0.3\n"
+                + "cp \"$2\" \"$4\"\n");
+        assertTrue(stub.toFile().setExecutable(true));
+        String previous = System.setProperty(GraphRenderer.EXECUTABLE_PROPERTY, stub.toString());
+        try (GraphRenderer renderer = new GraphRenderer(System.getProperty(GraphRenderer.EXECUTABLE_PROPERTY),
+                dir.resolve("cache"), 2, 2, 1500, GraphRenderer.DEFAULT_MAX_ENTRIES)) {
+            Path dot = dir.resolve("graph.dot");
+            Files.writeString(dot, "digraph { a -> b }");
+            CompletableFuture<Path> first = renderer.render(dot, dir.resolve("1.png"));
+            CompletableFuture<Path> duplicate = renderer.render(dot, dir.resolve("2.png"));
+            // render返回后覆盖文件，不影响已经提交的渲染
+            Files.writeString(dot, "digraph { a -> c }");
+            CompletableFuture<Path> second = renderer.render(dot, dir.resolve("3.png"));
+            CompletableFuture.allOf(first, duplicate, second).join();
+            assertEquals(2, Files.readAllLines(calls).size());
+            assertEquals("digraph { a -> b }", Files.readString(duplicate.join()));
+            assertEquals("digraph { a -> c }", Files.readString(second.join()));
+
+            Files.writeString(dot, "digraph { a -> b }");
+            assertEquals("digraph { a -> b }", Files.readString(renderer.render(dot, dir.resolve("4.png")).join()));
+            assertEquals(2, Files.readAllLines(calls).size());
+
+            Files.writeString(dot, "digraph { hang }");
+            try {
+                renderer.render(dot, dir.resolve("5.png")).join();
+                fail("render should time out");
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            long hung = Long.parseLong(Files.readString(pid).trim());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ProcessHandle.of(hung).map(ProcessHandle::isAlive).orElse(false)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertFalse(ProcessHandle.of(hung).map(ProcessHandle::isAlive).orElse(false));
+        } finally {
+            if (previous == null) {
+                System.clearProperty(GraphRenderer.EXECUTABLE_PROPERTY);
+            } else {
+                System.setProperty(GraphRenderer.EXECUTABLE_PROPERTY, previous);
+            }
+        }
+    }
+
+    @Test
+    public void testRendererEvictsLeastRecentlyUsed() throws Exception {
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+        Path dir = Files.createTempDirectory("lab3-render");
+        Path calls = dir.resolve("calls");
+        Path stub = dir.resolve("dot.sh");
+        Files.writeString(stub, "#!/bin/sh\necho \"$2\" >> '" + calls + "'\ncp \"$2\" \"$4\"\n");
+        assertTrue(stub.toFile().setExecutable(true));
+        Path cache = dir.resolve("cache");
+        Path dot = dir.resolve("graph.dot");
+        try (GraphRenderer renderer = new GraphRenderer(stub.toString(), cache, 2, 2, 5000, 2)) {
+            for (String graph : new String[] {"a", "b", "a", "c"}) {
+                Files.writeString(dot, "digraph { " + graph + " }");
+                assertEquals("digraph { " + graph + " }", Files.readString(renderer.render(dot, dir.resolve("out.png")).join()));
+                // 保证文件的修改时间各不相同
+                Thread.sleep(50);
+            }
+            assertEquals(3, Files.readAllLines(calls).size());
+            // b最久未用，被删除；渲染完成后不保留DOT副本
+            List<String> cached = new ArrayList<>();
+            try (var files = Files.list(cache)) {
+                files.forEach(file -> cached.add(file.getFileName().toString()));
+            }
+            assertEquals(2, cached.size());
+            assertTrue(cached.stream().allMatch(name -> name.endsWith(".png")));
+            Files.writeString(dot, "digraph { a }");
+            renderer.render(dot, dir.resolve("out.png")).join();
+            Files.writeString(dot, "digraph { c }");
+            renderer.render(dot, dir.resolve("out.png")).join();
+            assertEquals(3, Files.readAllLines(calls).size());
+            Files.writeString(dot, "digraph { b }");
+            renderer.render(dot, dir.resolve("out.png")).join();
+            assertEquals(4, Files.readAllLines(calls).size());
+        }
+    }
+
+    private static HttpResponse<String> get(HttpClient client, String uri) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(uri)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> post(HttpClient client, String uri, String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(uri))
+                        .POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String generate(Reader in, BridgeIndex index, long seed) throws IOException {
+        StringWriter out = new StringWriter();
+        new TextGenerator(index).generate(in, out, seed);
+        return out.toString();
+    }
+
+    /**
+     * 由随机的两字母单词组成的文本，单词表大小约为letters的平方.
+     */
+    private static String randomText(Random random, int words, int letters) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append((char) ('a' + random.nextInt(letters))).append((char) ('a' + random.nextInt(letters))).append(' ');
+        }
+        return text.toString();
+    }
+
+    /**
+     * 用优先队列实现的朴素Dijkstra算法，作为搜索引擎的对照.
+     */
+    private static int[] baselineDistances(CompactGraph compact, int source) {
+        int[] distance = new int[compact.nodeCount()];
+        Arrays.fill(distance, PathEngine.UNREACHABLE);
+        distance[source] = 0;
+        PriorityQueue<int[]> queue = new PriorityQueue<>(Comparator.comparingInt((int[] entry) -> entry[1]));
+        queue.add(new int[] {source, 0});
+        while (!queue.isEmpty()) {
+            int[] entry = queue.poll();
+            int u = entry[0];
+            if (entry[1] > distance[u]) {
+                continue;
+            }
+            for (int e = compact.edgeStart(u); e < compact.edgeEnd(u); e++) {
+                int v = compact.target(e);
+                int d = distance[u] + compact.weight(e);
+                if (d < distance[v]) {
+                    distance[v] = d;
+                    queue.add(new int[] {v, d});
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * 检查引擎最近一次点到点查询给出的路径从from开始、到to结束，
+     * 每一步都是图中的边，且边权之和等于distance.
+     */
+    private static void assertValidPath(CompactGraph compact, PathEngine engine, int from, int to, int distance) {
+        int[] path = new int[engine.pathLength()];
+        assertEquals(path.length, engine.copyPath(path));
+        if (distance == PathEngine.UNREACHABLE) {
+            assertEquals(0, path.length);
+            return;
+        }
+        assertEquals(from, path[0]);
+        assertEquals(to, path[path.length - 1]);
+        long length = 0;
+        for (int i = 0; i + 1 < path.length; i++) {
+            int weight = edgeWeight(compact, path[i], path[i + 1]);
+            assertTrue(weight > 0);
+            length += weight;
+        }
+        assertEquals(distance, length);
+    }
+
+    /**
+     * 随机选一个节点编号，fixed不小于0时直接返回它.
+     */
+    private static int pick(Random random, CompactGraph compact, int fixed) {
+        return fixed >= 0 ? fixed : random.nextInt(compact.nodeCount());
+    }
+
+    private static int edgeWeight(CompactGraph compact, int from, int to) {
+        for (int e = compact.edgeStart(from); e < compact.edgeEnd(from); e++) {
+            if (compact.target(e) == to) {
+                return compact.weight(e);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 比较两个图冻结后的单词顺序、每个单词的出边顺序和边权.
+     */
+    private static void assertSameGraph(DirectedGraph expected, DirectedGraph actual) {
+        CompactGraph want = expected.freeze();
+        CompactGraph got = actual.freeze();
+        assertEquals(want.nodeCount(), got.nodeCount());
+        assertEquals(want.edgeCount(), got.edgeCount());
+        for (int id = 0; id < want.nodeCount(); id++) {
+            assertEquals(want.word(id), got.word(id));
+            assertEquals(want.edgeStart(id), got.edgeStart(id));
+            for (int e = want.edgeStart(id); e < want.edgeEnd(id); e++) {
+                assertEquals(want.target(e), got.target(e));
+                assertEquals(want.weight(e), got.weight(e));
+            }
+        }
+    }
+
+    private static long sumWeights(CompactGraph snapshot) {
+        long total = 0;
+        for (int e = 0; e < snapshot.edgeCount(); e++) {
+            total += snapshot.weight(e);
+        }
+        return total;
+    }
+
     private void printTestResult(String word1, String word2, String expected, String actual) {
         boolean passed = expected.equals(actual);
         System.out.println("Input1: " + word1);
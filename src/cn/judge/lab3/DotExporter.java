@@ -0,0 +1,121 @@
+package cn.judge.lab3;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DotExporter类把有向图以Graphviz DOT格式流式写入文件.
+ * 需要高亮的路径先被拆成边，以(源编号, 目标编号)组成的long为键放入哈希表，
+ * 导出每条边时只需一次O(1)查找；输出经由大缓冲区直接写入文件通道，
+ * 不会在内存中拼出整个文件.
+ */
+final class DotExporter {
+    /**
+     * 依次分配给各条高亮路径的颜色.
+     */
+    static final String[] PALETTE = {
+        "red", "blue", "green3", "orange", "purple", "brown"};
+
+    /**
+     * 写文件时的缓冲区大小（字符数）.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * 高亮边到颜色的映射.
+     */
+    private final Map<Long, String> highlighted = new HashMap<>();
+
+    /**
+     * 已加入的高亮路径数量.
+     */
+    private int paths;
+
+    /**
+     * 高亮一条路径，颜色按加入顺序从调色板中选取.
+     * 一条边属于多条路径时使用最先加入的那条路径的颜色.
+     *
+     * @param path 路径上的节点，可以为null.
+     * @return 导出器本身.
+     */
+    DotExporter highlight(final List<Node> path) {
+        if (path == null) {
+            return this;
+        }
+        String color = PALETTE[paths++ % PALETTE.length];
+        for (int i = 0; i < path.size() - 1; i++) {
+            highlighted.putIfAbsent(
+                    edgeKey(path.get(i), path.get(i + 1)), color);
+        }
+        return this;
+    }
+
+    /**
+     * 把邻接列表导出为DOT文件.
+     *
+     * @param adjacencyList 邻接列表.
+     * @param path          输出文件路径.
+     * @throws IOException 写入失败时抛出.
+     */
+    void write(final Map<Node, List<Node>> adjacencyList, final Path path)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             Writer writer = new BufferedWriter(Channels.newWriter(
+                     channel, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            write(adjacencyList, writer);
+        }
+    }
+
+    /**
+     * 把邻接列表以DOT格式写入Writer.
+     *
+     * @param adjacencyList 邻接列表.
+     * @param writer        输出.
+     * @throws IOException 写入失败时抛出.
+     */
+    void write(final Map<Node, List<Node>> adjacencyList, final Writer writer)
+            throws IOException {
+        writer.write("digraph G {\n");
+        for (Map.Entry<Node, List<Node>> entry : adjacencyList.entrySet()) {
+            Node from = entry.getKey();
+            if (from == null) {
+                continue;
+            }
+            for (Node to : entry.getValue()) {
+                // 如果没有权重，默认为1
+                int weight = Math.max(1, from.weightTo(to));
+                writer.write("\t\"");
+                writer.write(from.getLabel());
+                writer.write("\" -> \"");
+                writer.write(to.getLabel());
+                writer.write("\" [label=\"");
+                writer.write(Integer.toString(weight));
+                writer.write('"');
+                String color = highlighted.isEmpty()
+                        ? null : highlighted.get(edgeKey(from, to));
+                if (color != null) {
+                    writer.write(", color=\"");
+                    writer.write(color);
+                    writer.write("\", penwidth=2");
+                }
+                writer.write("];\n");
+            }
+        }
+        writer.write("}");
+    }
+
+    private static long edgeKey(final Node from, final Node to) {
+        return ((long) from.getId() << 32) | (to.getId() & 0xFFFFFFFFL);
+    }
+}
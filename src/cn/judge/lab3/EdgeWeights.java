@@ -0,0 +1,253 @@
+package cn.judge.lab3;
+
+import java.util.Arrays;
+
+/**
+ * EdgeWeights类存储一个节点在构建期间的出边（或入边）及其权重.
+ * 以目标节点编号为键做开放寻址（线性探测），权重直接存为int，不装箱；
+ * 增加权重只需一次探测，找不到时在同一位置插入.
+ * 出边按第一次出现的顺序保存，可以按下标顺序遍历；同时维护一个按权重
+ * 从大到小排列的顺序，每次增加权重时只把这条边向前移动到合适的位置，
+ * 因此随时可以直接取出权重最大的k条边，不需要排序.
+ * 词频近似Zipf分布时大多数单词只有一两条边，所以数组都按需分配：
+ * 边数不超过LINEAR_LIMIT时不建哈希槽位，直接顺序查找；出现顺序本身
+ * 就是权重顺序时（例如只有一条边）也不分配排名数组.
+ */
+final class EdgeWeights {
+    /**
+     * 不建哈希槽位、顺序查找的最大边数.
+     */
+    private static final int LINEAR_LIMIT = 4;
+
+    /**
+     * 尚未分配时共用的空数组.
+     */
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * 哈希槽位，存放出边下标加1，0表示空槽；装载因子不超过1/2.
+     * 边数不超过LINEAR_LIMIT时为null.
+     */
+    private int[] slots;
+
+    /**
+     * 按出现顺序存储的目标节点编号.
+     */
+    private int[] targets = EMPTY;
+
+    /**
+     * 与targets对应的权重.
+     */
+    private int[] weights = EMPTY;
+
+    /**
+     * 按权重从大到小排列的出边下标，权重相同的边之间顺序不定.
+     * 为null时表示这个顺序就是出现顺序.
+     */
+    private int[] byWeight;
+
+    /**
+     * 每条出边在byWeight中的位置，与byWeight同时分配.
+     */
+    private int[] rankOf;
+
+    /**
+     * 出边数量.
+     */
+    private int size;
+
+    /**
+     * 把到目标节点的边的权重增加指定的值，边不存在时创建.
+     *
+     * @param target 目标节点编号.
+     * @param weight 增加的权重.
+     * @return 新建了边时返回true.
+     */
+    boolean add(final int target, final int weight) {
+        if (slots == null) {
+            for (int e = 0; e < size; e++) {
+                if (targets[e] == target) {
+                    weights[e] += weight;
+                    promote(e);
+                    return false;
+                }
+            }
+            append(target, weight);
+            if (size > LINEAR_LIMIT) {
+                rehash(Integer.highestOneBit(size) << 2);
+            }
+            return true;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(target) & mask;; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                append(target, weight);
+                slots[i] = size;
+                if (size * 2 > slots.length) {
+                    rehash(slots.length * 2);
+                }
+                return true;
+            }
+            if (targets[slot - 1] == target) {
+                weights[slot - 1] += weight;
+                promote(slot - 1);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 获取到目标节点的边的权重.
+     *
+     * @param target 目标节点编号.
+     * @return 权重，没有这条边时返回0.
+     */
+    int weight(final int target) {
+        if (slots == null) {
+            for (int e = 0; e < size; e++) {
+                if (targets[e] == target) {
+                    return weights[e];
+                }
+            }
+            return 0;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(target) & mask;; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return 0;
+            }
+            if (targets[slot - 1] == target) {
+                return weights[slot - 1];
+            }
+        }
+    }
+
+    /**
+     * 获取出边数量.
+     *
+     * @return 出边数量.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 获取第i条出边的目标节点编号.
+     *
+     * @param i 出边下标，按第一次出现的顺序.
+     * @return 目标节点编号.
+     */
+    int target(final int i) {
+        return targets[i];
+    }
+
+    /**
+     * 获取第i条出边的权重.
+     *
+     * @param i 出边下标，按第一次出现的顺序.
+     * @return 权重.
+     */
+    int weightAt(final int i) {
+        return weights[i];
+    }
+
+    /**
+     * 获取权重第r大的出边的下标.
+     *
+     * @param r 名次，从0开始，小于size().
+     * @return 出边下标，可用于target和weightAt.
+     */
+    int ranked(final int r) {
+        return byWeight == null ? r : byWeight[r];
+    }
+
+    /**
+     * 在出现顺序的末尾加入一条边，并维护权重顺序.
+     */
+    private void append(final int target, final int weight) {
+        if (size == targets.length) {
+            int capacity = Math.max(1, size * 2);
+            targets = Arrays.copyOf(targets, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            if (byWeight != null) {
+                byWeight = Arrays.copyOf(byWeight, capacity);
+                rankOf = Arrays.copyOf(rankOf, capacity);
+            }
+        }
+        targets[size] = target;
+        weights[size] = weight;
+        if (byWeight != null) {
+            byWeight[size] = size;
+            rankOf[size] = size;
+        }
+        size++;
+        promote(size - 1);
+    }
+
+    /**
+     * 权重增加后把边在byWeight中前移，保持从大到小的顺序.
+     * 越过的边权重都相同时（每次加1的常见情况）只需一次交换.
+     */
+    private void promote(final int edge) {
+        int from = byWeight == null ? edge : rankOf[edge];
+        int w = weights[edge];
+        if (from == 0 || weights[ranked(from - 1)] >= w) {
+            return;
+        }
+        if (byWeight == null) {
+            // 第一次偏离出现顺序，按恒等排列分配排名数组
+            byWeight = new int[targets.length];
+            rankOf = new int[targets.length];
+            for (int e = 0; e < size; e++) {
+                byWeight[e] = e;
+                rankOf[e] = e;
+            }
+        }
+        // 二分查找第一个权重小于w的位置，它之前的边权重都不小于w
+        int lo = 0;
+        int hi = from;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (weights[byWeight[mid]] >= w) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (weights[byWeight[lo]] == weights[byWeight[from - 1]]) {
+            int displaced = byWeight[lo];
+            byWeight[from] = displaced;
+            rankOf[displaced] = from;
+        } else {
+            System.arraycopy(byWeight, lo, byWeight, lo + 1, from - lo);
+            for (int r = lo + 1; r <= from; r++) {
+                rankOf[byWeight[r]] = r;
+            }
+        }
+        byWeight[lo] = edge;
+        rankOf[edge] = lo;
+    }
+
+    private void rehash(final int capacity) {
+        int[] newSlots = new int[capacity];
+        int mask = newSlots.length - 1;
+        for (int e = 0; e < size; e++) {
+            int i = mix(targets[e]) & mask;
+            while (newSlots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            newSlots[i] = e + 1;
+        }
+        slots = newSlots;
+    }
+
+    /**
+     * 打散连续的节点编号，避免它们落在相邻的槽位上形成长探测链.
+     */
+    private static int mix(final int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,164 @@
+package cn.judge.lab3;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * GraphEvents类定义图操作的JFR（Java Flight Recorder）事件.
+ * 没有启用记录时，JIT会消除事件对象的创建和提交，开销可以忽略.
+ * 用"java -XX:StartFlightRecording ..."启动后可以在JDK Mission Control
+ * 中按"Lab3"分类查看.
+ */
+final class GraphEvents {
+    /**
+     * 隐藏工具类构造器.
+     */
+    private GraphEvents() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * 一段文本（一次追加、一个映射块或一个并行段）被加入图中.
+     */
+    @Name("cn.judge.lab3.Ingest")
+    @Label("Graph Ingestion Chunk")
+    @Category("Lab3")
+    static final class Ingest extends Event {
+        /**
+         * 文本来源.
+         */
+        @Label("Source")
+        String source;
+
+        /**
+         * 文本的字节数或字符数.
+         */
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        /**
+         * 单词数.
+         */
+        @Label("Words")
+        long words;
+    }
+
+    /**
+     * 一次最短路径搜索.
+     */
+    @Name("cn.judge.lab3.PathSearch")
+    @Label("Shortest Path Search")
+    @Category("Lab3")
+    static final class PathSearch extends Event {
+        /**
+         * 搜索算法.
+         */
+        @Label("Algorithm")
+        String algorithm;
+
+        /**
+         * 起点编号.
+         */
+        @Label("Source")
+        int source;
+
+        /**
+         * 终点编号，单源搜索为-1.
+         */
+        @Label("Target")
+        int target;
+
+        /**
+         * 最短距离，不可达或单源搜索为-1.
+         */
+        @Label("Distance")
+        int distance;
+
+        /**
+         * 确定了最短距离的节点数.
+         */
+        @Label("Nodes Settled")
+        int settled;
+
+        /**
+         * 优先队列的入队次数.
+         */
+        @Label("Queue Pushes")
+        int pushes;
+    }
+
+    /**
+     * 一次Graphviz渲染请求，从提交到完成.
+     */
+    @Name("cn.judge.lab3.Render")
+    @Label("Graph Render")
+    @Category("Lab3")
+    static final class Render extends Event {
+        /**
+         * DOT文件.
+         */
+        @Label("DOT File")
+        String dotFile;
+
+        /**
+         * 是否直接使用了缓存的图片.
+         */
+        @Label("Cache Hit")
+        boolean cacheHit;
+
+        /**
+         * 是否失败.
+         */
+        @Label("Failed")
+        boolean failed;
+    }
+
+    /**
+     * 在搜索结束后提交路径搜索事件.
+     *
+     * @param event     已调用begin的事件.
+     * @param algorithm 搜索算法.
+     * @param engine    执行搜索的引擎.
+     * @param source    起点编号.
+     * @param target    终点编号，单源搜索为-1.
+     * @param distance  搜索返回的距离.
+     */
+    static void commit(final PathSearch event, final String algorithm,
+                       final PathEngine engine, final int source,
+                       final int target, final int distance) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.algorithm = algorithm;
+            event.source = source;
+            event.target = target;
+            event.distance = distance == PathEngine.UNREACHABLE
+                    ? -1 : distance;
+            event.settled = engine.settledCount();
+            event.pushes = engine.pushCount();
+            event.commit();
+        }
+    }
+
+    /**
+     * 提交文本加入事件.
+     *
+     * @param event  已调用begin的事件.
+     * @param source 文本来源.
+     * @param size   文本大小.
+     * @param words  单词数.
+     */
+    static void commit(final Ingest event, final String source,
+                       final long size, final long words) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.size = size;
+            event.words = words;
+            event.commit();
+        }
+    }
+}
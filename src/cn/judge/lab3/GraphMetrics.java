@@ -0,0 +1,338 @@
+package cn.judge.lab3;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * GraphMetrics类记录一个图上各项操作的运行指标.
+ * 每种操作有调用次数、失败次数、总耗时和按2的幂分桶的延迟直方图，
+ * 另有节点数、边数和估计堆内存占用三个即时读数. 所有计数器都是
+ * LongAdder，多线程同时记录时不会互相竞争.
+ * 指标默认关闭（可用系统属性lab3.metrics=true打开），关闭时每次操作
+ * 只多读一次volatile变量. 嵌套调用的操作（如calcShortestPath内部的
+ * shortestPathsFrom）分别计数.
+ */
+final class GraphMetrics {
+    /**
+     * 被记录的操作.
+     */
+    enum Operation {
+        /**
+         * 从文本或文件构建图.
+         */
+        BUILD_GRAPH,
+        /**
+         * 向图中追加文本.
+         */
+        APPEND_TEXT,
+        /**
+         * 查询桥接词.
+         */
+        QUERY_BRIDGE_WORDS,
+        /**
+         * 根据桥接词生成新文本.
+         */
+        GENERATE_NEW_TEXT,
+        /**
+         * 计算并展示最短路径.
+         */
+        CALC_SHORTEST_PATH,
+        /**
+         * 点到点最短路径搜索.
+         */
+        DIJKSTRA,
+        /**
+         * 单源最短路径树.
+         */
+        SHORTEST_PATHS_FROM,
+        /**
+         * 判断两个单词之间是否存在路径.
+         */
+        IS_REACHABLE,
+        /**
+         * 随机游走.
+         */
+        RANDOM_WALK,
+        /**
+         * 按权重查询前k个后继或前驱.
+         */
+        TOP_NEIGHBORS,
+        /**
+         * 计算PageRank.
+         */
+        PAGE_RANK,
+        /**
+         * 导出DOT文件.
+         */
+        EXPORT_DOT,
+        /**
+         * 渲染图片，从提交到完成.
+         */
+        SHOW_DIRECTED_GRAPH
+    }
+
+    /**
+     * 指标关闭时begin返回的值.
+     */
+    static final long NOT_TIMED = Long.MIN_VALUE;
+
+    /**
+     * 直方图的桶数：第i个桶统计耗时在[2^(i-1), 2^i)纳秒内的调用.
+     */
+    static final int BUCKETS = 64;
+
+    /**
+     * 是否记录指标.
+     */
+    private static volatile boolean enabled =
+            Boolean.getBoolean("lab3.metrics");
+
+    /**
+     * 每种操作的调用次数.
+     */
+    private final LongAdder[] calls;
+
+    /**
+     * 每种操作的失败次数.
+     */
+    private final LongAdder[] errors;
+
+    /**
+     * 每种操作的总耗时（纳秒）.
+     */
+    private final LongAdder[] totalNanos;
+
+    /**
+     * 每种操作的延迟直方图.
+     */
+    private final LongAdder[][] histograms;
+
+    /**
+     * 节点数.
+     */
+    private final LongSupplier nodes;
+
+    /**
+     * 边数.
+     */
+    private final LongSupplier edges;
+
+    /**
+     * 估计的堆内存占用（字节）.
+     */
+    private final LongSupplier heapBytes;
+
+    /**
+     * 构造一组指标.
+     *
+     * @param nodeCount     读取节点数.
+     * @param edgeCount     读取边数.
+     * @param heapEstimate  读取估计的堆内存占用.
+     */
+    GraphMetrics(final LongSupplier nodeCount, final LongSupplier edgeCount,
+                 final LongSupplier heapEstimate) {
+        this.nodes = nodeCount;
+        this.edges = edgeCount;
+        this.heapBytes = heapEstimate;
+        int ops = Operation.values().length;
+        calls = new LongAdder[ops];
+        errors = new LongAdder[ops];
+        totalNanos = new LongAdder[ops];
+        histograms = new LongAdder[ops][BUCKETS];
+        for (int op = 0; op < ops; op++) {
+            calls[op] = new LongAdder();
+            errors[op] = new LongAdder();
+            totalNanos[op] = new LongAdder();
+            for (int b = 0; b < BUCKETS; b++) {
+                histograms[op][b] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * 打开或关闭所有图的指标记录.
+     *
+     * @param on 是否记录.
+     */
+    static void setEnabled(final boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * 判断是否在记录指标.
+     *
+     * @return 记录时返回true.
+     */
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 开始一次操作.
+     *
+     * @return 开始时刻，指标关闭时为NOT_TIMED.
+     */
+    long begin() {
+        return enabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * 结束一次操作并记录耗时.
+     *
+     * @param operation 操作.
+     * @param started   begin的返回值.
+     * @param failed    操作是否抛出了异常.
+     */
+    void end(final Operation operation, final long started,
+             final boolean failed) {
+        if (started == NOT_TIMED) {
+            return;
+        }
+        long nanos = Math.max(0, System.nanoTime() - started);
+        int op = operation.ordinal();
+        calls[op].increment();
+        if (failed) {
+            errors[op].increment();
+        }
+        totalNanos[op].add(nanos);
+        histograms[op][Math.min(BUCKETS - 1,
+                64 - Long.numberOfLeadingZeros(nanos))].increment();
+    }
+
+    /**
+     * 获取操作的调用次数.
+     *
+     * @param operation 操作.
+     * @return 调用次数.
+     */
+    long calls(final Operation operation) {
+        return calls[operation.ordinal()].sum();
+    }
+
+    /**
+     * 获取操作的失败次数.
+     *
+     * @param operation 操作.
+     * @return 失败次数.
+     */
+    long errors(final Operation operation) {
+        return errors[operation.ordinal()].sum();
+    }
+
+    /**
+     * 获取操作的平均耗时.
+     *
+     * @param operation 操作.
+     * @return 平均耗时（纳秒），没有调用时为0.
+     */
+    double meanNanos(final Operation operation) {
+        long n = calls(operation);
+        return n == 0 ? 0 : (double) totalNanos[operation.ordinal()].sum() / n;
+    }
+
+    /**
+     * 估计操作耗时的分位数，结果为所在桶的上界.
+     *
+     * @param operation 操作.
+     * @param quantile  分位数，取值在[0, 1].
+     * @return 耗时上界（纳秒），没有调用时为0.
+     */
+    long percentileNanos(final Operation operation, final double quantile) {
+        LongAdder[] histogram = histograms[operation.ordinal()];
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            counts[b] = histogram[b].sum();
+            total += counts[b];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank && counts[b] > 0) {
+                return b == BUCKETS - 1 ? Long.MAX_VALUE : 1L << b;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * 获取节点数.
+     *
+     * @return 节点数.
+     */
+    long nodeCount() {
+        return nodes.getAsLong();
+    }
+
+    /**
+     * 获取边数.
+     *
+     * @return 边数.
+     */
+    long edgeCount() {
+        return edges.getAsLong();
+    }
+
+    /**
+     * 获取估计的堆内存占用.
+     *
+     * @return 字节数.
+     */
+    long heapBytes() {
+        return heapBytes.getAsLong();
+    }
+
+    /**
+     * 把所有指标格式化为文本，每种被调用过的操作一行.
+     *
+     * @return 指标报告.
+     */
+    String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("nodes=").append(nodeCount())
+                .append(" edges=").append(edgeCount())
+                .append(" heapBytes~").append(heapBytes()).append('\n');
+        for (Operation operation : Operation.values()) {
+            long n = calls(operation);
+            if (n == 0) {
+                continue;
+            }
+            report.append(String.format(
+                    "%s calls=%d errors=%d mean=%.1fus p50<=%dus p99<=%dus%n",
+                    operation, n, errors(operation),
+                    meanNanos(operation) / 1000,
+                    percentileNanos(operation, 0.5) / 1000,
+                    percentileNanos(operation, 0.99) / 1000));
+        }
+        return report.toString();
+    }
+
+    /**
+     * 定期把指标报告交给sink，例如写入日志.
+     *
+     * @param period 间隔.
+     * @param unit   间隔的单位.
+     * @param sink   接收报告.
+     * @return 关闭后停止定期输出.
+     */
+    AutoCloseable dumpEvery(final long period, final TimeUnit unit,
+                            final Consumer<String> sink) {
+        ScheduledExecutorService scheduler =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "graph-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        scheduler.scheduleAtFixedRate(() -> sink.accept(report()),
+                period, period, unit);
+        return scheduler::shutdownNow;
+    }
+}
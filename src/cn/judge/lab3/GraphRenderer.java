@@ -0,0 +1,396 @@
+package cn.judge.lab3;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * GraphRenderer类是异步的Graphviz渲染服务.
+ * 渲染在有界的线程池中执行，调用方立即得到一个future；
+ * 以DOT内容的SHA-256作为键缓存生成的PNG，内容相同的请求直接复用缓存，
+ * 同时进行中的相同请求合并为一次渲染. 缓存的PNG数量有上限，超过时
+ * 按最后使用时间（命中时更新文件的修改时间）删除最久未用的，
+ * 正在被复制给调用方的PNG不会被删除. 同时运行的dot进程数有上限，
+ * 超过超时时间的进程会被强制结束.
+ * DOT文件在调用render的线程中读入并计算哈希，之后的渲染只使用这份
+ * 内容的副本，因此render返回后原文件可以立即被覆盖.
+ */
+final class GraphRenderer implements AutoCloseable {
+    /**
+     * 指定渲染程序的系统属性，便于用桩程序测试.
+     */
+    static final String EXECUTABLE_PROPERTY = "lab3.dot";
+
+    /**
+     * 默认的工作线程数.
+     */
+    static final int DEFAULT_WORKERS = 4;
+
+    /**
+     * 默认的dot进程并发上限.
+     */
+    static final int DEFAULT_MAX_PROCESSES = 2;
+
+    /**
+     * 默认的单次渲染超时时间（毫秒）.
+     */
+    static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+
+    /**
+     * 默认的缓存PNG数量上限.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 64;
+
+    /**
+     * 缓存文件名中哈希值的长度（SHA-256的十六进制表示）.
+     */
+    private static final int HASH_LENGTH = 64;
+
+    /**
+     * 等待队列的容量，队列满时新的请求被拒绝.
+     */
+    private static final int QUEUE_CAPACITY = 256;
+
+    /**
+     * 渲染程序.
+     */
+    private final String executable;
+
+    /**
+     * PNG缓存目录.
+     */
+    private final Path cacheDir;
+
+    /**
+     * 单次渲染超时时间（毫秒）.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * 缓存PNG数量上限.
+     */
+    private final int maxEntries;
+
+    /**
+     * 限制同时运行的dot进程数.
+     */
+    private final Semaphore processes;
+
+    /**
+     * 工作线程池.
+     */
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * 进行中的渲染，键为DOT内容的哈希值.
+     */
+    private final Map<String, CompletableFuture<Path>> inFlight =
+            new ConcurrentHashMap<>();
+
+    /**
+     * 正在使用（等待渲染或复制）的缓存PNG及其请求数，由自身加锁保护.
+     * 清理缓存时跳过这些PNG.
+     */
+    private final Map<String, Integer> inUse = new HashMap<>();
+
+    /**
+     * 使用默认配置构造渲染服务，渲染程序可由系统属性lab3.dot指定.
+     */
+    GraphRenderer() {
+        this(System.getProperty(EXECUTABLE_PROPERTY, "dot"),
+                Paths.get(System.getProperty("java.io.tmpdir"),
+                        "lab3-render-cache"),
+                DEFAULT_WORKERS, DEFAULT_MAX_PROCESSES,
+                DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * 构造渲染服务.
+     *
+     * @param dotExecutable 渲染程序，按dot的参数格式调用.
+     * @param cacheDirectory PNG缓存目录.
+     * @param workers       工作线程数.
+     * @param maxProcesses  同时运行的渲染进程上限.
+     * @param timeout       单次渲染超时时间（毫秒）.
+     * @param cacheEntries  缓存PNG数量上限.
+     */
+    GraphRenderer(final String dotExecutable, final Path cacheDirectory,
+                  final int workers, final int maxProcesses,
+                  final long timeout, final int cacheEntries) {
+        this.executable = dotExecutable;
+        this.cacheDir = cacheDirectory;
+        this.timeoutMillis = timeout;
+        this.maxEntries = cacheEntries;
+        this.processes = new Semaphore(maxProcesses);
+        this.pool = new ThreadPoolExecutor(workers, workers,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "graph-renderer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 异步地把DOT文件渲染为PNG.
+     * 文件内容在返回之前读入，读取失败时返回失败的future.
+     *
+     * @param dotFile     DOT文件路径.
+     * @param outputImage 输出的PNG路径.
+     * @return 渲染完成后得到输出路径的future.
+     */
+    CompletableFuture<Path> render(final Path dotFile,
+                                   final Path outputImage) {
+        GraphEvents.Render event = new GraphEvents.Render();
+        event.begin();
+        try {
+            byte[] content = Files.readAllBytes(dotFile);
+            String hash = sha256(content);
+            return cached(hash, content, event)
+                    .thenApplyAsync(png -> copy(png, outputImage), pool)
+                    .whenComplete((png, error) -> {
+                        release(hash);
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.dotFile = dotFile.toString();
+                            event.failed = error != null;
+                            event.commit();
+                        }
+                    });
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        }
+    }
+
+    /**
+     * 获取内容哈希对应的缓存PNG，不存在时渲染，相同的请求只渲染一次.
+     * 命中缓存时记录在事件中.
+     */
+    private CompletableFuture<Path> cached(final String hash,
+                                           final byte[] content,
+                                           final GraphEvents.Render event) {
+        Path png = cacheDir.resolve(hash + ".png");
+        if (acquire(hash, png)) {
+            event.cacheHit = true;
+            return CompletableFuture.completedFuture(png);
+        }
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(hash, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            pool.execute(() -> {
+                Path dotCopy = cacheDir.resolve(hash + ".dot");
+                try {
+                    created.complete(runDot(save(hash, content), png));
+                } catch (RuntimeException e) {
+                    created.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(hash);
+                    // 渲染结束后DOT副本不再需要，只缓存PNG
+                    deleteQuietly(dotCopy);
+                }
+                if (!created.isCompletedExceptionally()) {
+                    evict();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 队列已满或服务已关闭时同样要结束等待者并清理
+            inFlight.remove(hash);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * 登记一次对缓存PNG的使用，并在PNG存在时更新它的最后使用时间.
+     * 与evict在同一把锁下进行，登记后PNG不会被删除.
+     *
+     * @return PNG已在缓存中时返回true.
+     */
+    private boolean acquire(final String hash, final Path png) {
+        synchronized (inUse) {
+            inUse.merge(hash, 1, Integer::sum);
+            try {
+                Files.setLastModifiedTime(png,
+                        FileTime.fromMillis(System.currentTimeMillis()));
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 结束一次对缓存PNG的使用.
+     */
+    private void release(final String hash) {
+        synchronized (inUse) {
+            inUse.computeIfPresent(hash, (key, count) ->
+                    count == 1 ? null : count - 1);
+        }
+    }
+
+    /**
+     * 缓存的PNG超过上限时按最后使用时间删除最久未用的，
+     * 跳过正在使用的PNG.
+     */
+    private void evict() {
+        List<Path> pngs = new ArrayList<>();
+        Map<Path, FileTime> used = new HashMap<>();
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.length() == HASH_LENGTH + ".png".length()
+                        && name.endsWith(".png")) {
+                    pngs.add(file);
+                    used.put(file, Files.getLastModifiedTime(file));
+                }
+            }
+        } catch (IOException e) {
+            // 其他线程同时删除了文件，留到下一次渲染后再清理
+            return;
+        }
+        int excess = pngs.size() - maxEntries;
+        if (excess <= 0) {
+            return;
+        }
+        pngs.sort(Comparator.comparing(used::get));
+        for (Path png : pngs) {
+            if (excess == 0) {
+                break;
+            }
+            String name = png.getFileName().toString();
+            synchronized (inUse) {
+                if (inUse.containsKey(name.substring(0, HASH_LENGTH))) {
+                    continue;
+                }
+                deleteQuietly(png);
+            }
+            excess--;
+        }
+    }
+
+    private static void deleteQuietly(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // 删除失败只会让缓存暂时多占空间
+        }
+    }
+
+    private Path runDot(final Path dotFile, final Path png) {
+        try {
+            Path tmp = Files.createTempFile(cacheDir, "render", ".png");
+            processes.acquire();
+            try {
+                Process process = new ProcessBuilder(executable, "-Tpng",
+                        dotFile.toString(), "-o", tmp.toString())
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                    Files.deleteIfExists(tmp);
+                    throw new CompletionException(new TimeoutException(
+                            executable + " timed out after "
+                                    + timeoutMillis + " ms"));
+                }
+                if (process.exitValue() != 0) {
+                    Files.deleteIfExists(tmp);
+                    throw new CompletionException(new IOException(
+                            executable + " exited with "
+                                    + process.exitValue()));
+                }
+            } finally {
+                processes.release();
+            }
+            return Files.move(tmp, png, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    private static Path copy(final Path png, final Path outputImage) {
+        try {
+            return Files.copy(png, outputImage,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 计算DOT内容的SHA-256，以十六进制字符串表示.
+     */
+    private static String sha256(final byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(content)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 把调用方读入的DOT内容保存到缓存目录，供渲染程序读取.
+     *
+     * @return 保存的文件路径.
+     */
+    private Path save(final String hash, final byte[] content) {
+        try {
+            Path copy = cacheDir.resolve(hash + ".dot");
+            if (!Files.exists(copy)) {
+                Files.createDirectories(cacheDir);
+                Path tmp = Files.createTempFile(cacheDir, "snapshot", ".dot");
+                Files.write(tmp, content);
+                Files.move(tmp, copy, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return copy;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 不再接受新的请求，并等待已提交的渲染完成.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package cn.judge.lab3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * GraphSnapshot类读写紧凑图的二进制快照.
+ * 快照头部记录魔数、格式版本、源文本的SHA-256、图的版本号、
+ * 文本最后一个单词的编号、节点数、边数、单词字节数和数据部分的
+ * CRC32C校验和；数据部分依次是单词偏移、CSR的offsets/targets/weights
+ * 和所有单词的UTF-8字节.
+ * 加载时通过内存映射读取，直接得到紧凑图，不创建任何Node对象；
+ * 但CSR数组会整块复制到堆中，每个单词也会解码为String，加载时间
+ * 仍与快照大小成正比，只是省去了分词和建图.
+ * 校验和只覆盖数据部分，头部的每个字段都单独检查范围.
+ */
+final class GraphSnapshot {
+    /**
+     * 快照的魔数.
+     */
+    static final int MAGIC = 0x4C475331;
+
+    /**
+     * 快照格式的版本号，格式变化时递增.
+     */
+    static final int VERSION = 2;
+
+    /**
+     * 源文本哈希值的字节数.
+     */
+    static final int HASH_BYTES = 32;
+
+    /**
+     * 头部的字节数.
+     */
+    static final int HEADER_BYTES =
+            4 + 4 + HASH_BYTES + 8 + 4 + 4 + 4 + 4 + 8;
+
+    /**
+     * 计算源文本哈希时的读缓冲区大小.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * 快照中的紧凑图，版本号即快照保存时图的版本号.
+     */
+    private final CompactGraph graph;
+
+    /**
+     * 文本最后一个单词的编号，-1表示没有.
+     */
+    private final int lastWord;
+
+    private GraphSnapshot(final CompactGraph compact, final int last) {
+        this.graph = compact;
+        this.lastWord = last;
+    }
+
+    /**
+     * 获取快照中的紧凑图.
+     *
+     * @return 紧凑图.
+     */
+    CompactGraph graph() {
+        return graph;
+    }
+
+    /**
+     * 获取文本最后一个单词的编号，追加文本时它与新文本的第一个单词相连.
+     *
+     * @return 节点编号，-1表示没有.
+     */
+    int lastWord() {
+        return lastWord;
+    }
+
+    /**
+     * 计算文件内容的SHA-256.
+     *
+     * @param path 文件路径.
+     * @return 32字节的哈希值.
+     * @throws IOException 读取失败时抛出.
+     */
+    static byte[] hash(final Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * 把紧凑图写入快照文件.
+     * 先写入同目录下的临时文件再原子地替换，写到一半失败不会留下损坏的快照.
+     *
+     * @param graph      紧凑图，其版本号一并写入.
+     * @param last       文本最后一个单词的编号，-1表示没有.
+     * @param sourceHash 源文本的哈希值.
+     * @param path       快照文件路径.
+     * @throws IOException 写入失败时抛出.
+     */
+    static void write(final CompactGraph graph, final int last,
+                      final byte[] sourceHash, final Path path)
+            throws IOException {
+        int n = graph.nodeCount();
+        int m = graph.edgeCount();
+        byte[][] words = new byte[n][];
+        int[] wordOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            words[v] = graph.word(v).getBytes(StandardCharsets.UTF_8);
+            wordOffsets[v + 1] = wordOffsets[v] + words[v].length;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(
+                4 * (2 * (n + 1) + 2 * m) + wordOffsets[n]);
+        IntBuffer ints = payload.asIntBuffer();
+        ints.put(wordOffsets);
+        for (int v = 0; v <= n; v++) {
+            ints.put(v < n ? graph.edgeStart(v) : m);
+        }
+        for (int e = 0; e < m; e++) {
+            ints.put(graph.target(e));
+        }
+        for (int e = 0; e < m; e++) {
+            ints.put(graph.weight(e));
+        }
+        payload.position(4 * ints.position());
+        for (byte[] word : words) {
+            payload.put(word);
+        }
+        payload.flip();
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).put(sourceHash)
+                .putLong(graph.version()).putInt(last)
+                .putInt(n).putInt(m).putInt(wordOffsets[n])
+                .putLong(crc.getValue());
+        header.flip();
+        Path dir = path.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, "snapshot", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp,
+                    StandardOpenOption.WRITE)) {
+                while (header.hasRemaining() || payload.hasRemaining()) {
+                    channel.write(new ByteBuffer[] {header, payload});
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 判断快照是否由给定的源文本生成且格式版本一致，只读取头部.
+     *
+     * @param path       快照文件路径.
+     * @param sourceHash 源文本的哈希值.
+     * @return 快照存在且匹配时返回true.
+     * @throws IOException 读取失败时抛出.
+     */
+    static boolean matches(final Path path, final byte[] sourceHash)
+            throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) < HEADER_BYTES) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                continue;
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return false;
+        }
+        byte[] hash = new byte[HASH_BYTES];
+        header.get(hash);
+        return Arrays.equals(hash, sourceHash);
+    }
+
+    /**
+     * 通过内存映射加载快照，把数据部分复制为紧凑图的数组.
+     *
+     * @param path 快照文件路径.
+     * @return 快照.
+     * @throws IOException 读取失败、格式不符或校验和不一致时抛出.
+     */
+    static GraphSnapshot load(final Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        }
+        if (buffer.remaining() < HEADER_BYTES
+                || buffer.getInt() != MAGIC) {
+            throw new IOException(path + " is not a graph snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported snapshot version " + version);
+        }
+        buffer.position(buffer.position() + HASH_BYTES);
+        long graphVersion = buffer.getLong();
+        int last = buffer.getInt();
+        int n = buffer.getInt();
+        int m = buffer.getInt();
+        int wordBytes = buffer.getInt();
+        long checksum = buffer.getLong();
+        long expected = 4L * (2L * (n + 1) + 2L * m) + wordBytes;
+        if (n < 0 || m < 0 || wordBytes < 0
+                || buffer.remaining() != expected) {
+            throw new IOException(path + " is truncated");
+        }
+        if (last < -1 || last >= n) {
+            throw new IOException(path + " is corrupted");
+        }
+        ByteBuffer payload = buffer.slice();
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        if (crc.getValue() != checksum) {
+            throw new IOException(path + " is corrupted");
+        }
+
+        IntBuffer ints = payload.asIntBuffer();
+        int[] wordOffsets = new int[n + 1];
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[m];
+        int[] weights = new int[m];
+        ints.get(wordOffsets).get(offsets).get(targets).get(weights);
+        payload.position(4 * ints.position());
+        byte[] bytes = new byte[wordBytes];
+        payload.get(bytes);
+
+        WordTable words = new WordTable(n);
+        for (int v = 0; v < n; v++) {
+            words.intern(new String(bytes, wordOffsets[v],
+                    wordOffsets[v + 1] - wordOffsets[v],
+                    StandardCharsets.UTF_8));
+        }
+        return new GraphSnapshot(new CompactGraph(words, offsets, targets,
+                weights, graphVersion), last);
+    }
+}
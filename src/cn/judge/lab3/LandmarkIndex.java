@@ -0,0 +1,392 @@
+package cn.judge.lab3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LandmarkIndex类是ALT（A*、地标、三角不等式）最短路径预处理索引.
+ * 预先计算k个地标单词到所有单词、以及所有单词到地标的最短距离，
+ * 查询时由三角不等式得到到终点距离的下界，作为A*搜索的启发函数.
+ * 若地标能证明某个单词不可能到达终点，该单词直接被剪枝.
+ */
+final class LandmarkIndex {
+    /**
+     * 序列化格式的魔数.
+     */
+    static final int MAGIC = 0x4C4D4B32;
+
+    /**
+     * 不可达的距离.
+     */
+    private static final int INF = PathEngine.UNREACHABLE;
+
+    /**
+     * 地标的节点编号.
+     */
+    private final int[] landmarks;
+
+    /**
+     * fromLandmark[i][v]为第i个地标到v的最短距离.
+     */
+    private final int[][] fromLandmark;
+
+    /**
+     * toLandmark[i][v]为v到第i个地标的最短距离.
+     */
+    private final int[][] toLandmark;
+
+    /**
+     * 所有有限距离中的最大值，决定A*队列的键跨度.
+     */
+    private final int maxDistance;
+
+    /**
+     * 已记录的查询次数.
+     */
+    private final LongAdder queries = new LongAdder();
+
+    /**
+     * 已记录的查询共确定了最短距离的节点数.
+     */
+    private final LongAdder settledNodes = new LongAdder();
+
+    private LandmarkIndex(final int[] landmarkIds, final int[][] from,
+                          final int[][] to) {
+        this.landmarks = landmarkIds;
+        this.fromLandmark = from;
+        this.toLandmark = to;
+        int max = 0;
+        for (int[][] rows : new int[][][] {from, to}) {
+            for (int[] row : rows) {
+                for (int d : row) {
+                    if (d != INF) {
+                        max = Math.max(max, d);
+                    }
+                }
+            }
+        }
+        this.maxDistance = max;
+    }
+
+    /**
+     * 为紧凑图选择地标并并行计算距离.
+     * 第一个地标取出入度之和最大的单词，之后每次选择离已选地标最远的单词
+     * （从已选地标都无法到达的单词优先），使地标分散在图的边缘.
+     * 所有搜索都在同一个线程池中进行：选择下一个地标要等待正向距离，
+     * 反向距离则在后台与之后的地标并行计算.
+     *
+     * @param graph       紧凑图.
+     * @param count       地标数量.
+     * @param parallelism 并行线程数.
+     * @return 地标索引.
+     */
+    static LandmarkIndex build(final CompactGraph graph, final int count,
+                               final int parallelism) {
+        int n = graph.nodeCount();
+        int k = Math.min(count, n);
+        int[] chosen = new int[k];
+        int[][] from = new int[k][];
+        int[][] to = new int[k][];
+        // 每个节点到已选地标的最小距离，用于挑选下一个地标
+        long[] score = new long[n];
+        Arrays.fill(score, Long.MAX_VALUE);
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<int[]>> backward = new ArrayList<>();
+            for (int i = 0; i < k; i++) {
+                int landmark = i == 0 ? maxDegree(graph)
+                        : farthest(graph, score, chosen, i);
+                chosen[i] = landmark;
+                backward.add(pool.submit(() -> backwardRow(graph, landmark)));
+                from[i] = pool.submit(() -> forwardRow(graph, landmark)).get();
+                for (int v = 0; v < n; v++) {
+                    int d = from[i][v];
+                    score[v] = Math.min(score[v],
+                            d == INF ? Long.MAX_VALUE : d);
+                }
+            }
+            for (int i = 0; i < k; i++) {
+                to[i] = backward.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return new LandmarkIndex(chosen, from, to);
+    }
+
+    private static int[] forwardRow(final CompactGraph graph,
+                                    final int landmark) {
+        PathEngine engine = graph.borrowEngine();
+        try {
+            engine.search(landmark);
+            int[] row = new int[graph.nodeCount()];
+            for (int v = 0; v < row.length; v++) {
+                row[v] = engine.distance(v);
+            }
+            return row;
+        } finally {
+            graph.releaseEngine(engine);
+        }
+    }
+
+    private static int[] backwardRow(final CompactGraph graph,
+                                     final int landmark) {
+        PathEngine engine = graph.borrowEngine();
+        try {
+            engine.searchBackward(landmark);
+            int[] row = new int[graph.nodeCount()];
+            for (int v = 0; v < row.length; v++) {
+                row[v] = engine.backwardDistance(v);
+            }
+            return row;
+        } finally {
+            graph.releaseEngine(engine);
+        }
+    }
+
+    private static int maxDegree(final CompactGraph graph) {
+        int best = 0;
+        for (int v = 1; v < graph.nodeCount(); v++) {
+            if (graph.outDegree(v) + graph.inDegree(v)
+                    > graph.outDegree(best) + graph.inDegree(best)) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    private static int farthest(final CompactGraph graph, final long[] score,
+                                final int[] chosen, final int chosenCount) {
+        int best = -1;
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            if (score[v] == 0 || contains(chosen, chosenCount, v)) {
+                continue;
+            }
+            if (best < 0 || score[v] > score[best]
+                    || (score[v] == score[best]
+                    && graph.outDegree(v) > graph.outDegree(best))) {
+                best = v;
+            }
+        }
+        return best < 0 ? chosen[0] : best;
+    }
+
+    private static boolean contains(final int[] a, final int size,
+                                    final int v) {
+        for (int i = 0; i < size; i++) {
+            if (a[i] == v) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取地标数量.
+     *
+     * @return 地标数量.
+     */
+    int size() {
+        return landmarks.length;
+    }
+
+    /**
+     * 获取第i个地标的节点编号.
+     *
+     * @param i 地标序号.
+     * @return 节点编号.
+     */
+    int landmark(final int i) {
+        return landmarks[i];
+    }
+
+    /**
+     * 获取所有有限距离中的最大值.
+     *
+     * @return 最大距离.
+     */
+    int maxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * 用三角不等式计算从v到target最短距离的下界.
+     *
+     * @param v      节点编号.
+     * @param target 终点编号.
+     * @return 距离下界；若能证明v不可能到达target，返回UNREACHABLE.
+     */
+    int lowerBound(final int v, final int target) {
+        int bound = 0;
+        for (int i = 0; i < landmarks.length; i++) {
+            int[] from = fromLandmark[i];
+            int[] to = toLandmark[i];
+            // d(v, L) <= d(v, t) + d(t, L)
+            if (to[v] != INF) {
+                if (to[target] != INF) {
+                    bound = Math.max(bound, to[v] - to[target]);
+                }
+            } else if (to[target] != INF) {
+                // t能到达L而v不能，说明v也到不了t
+                return INF;
+            }
+            // d(L, t) <= d(L, v) + d(v, t)
+            if (from[v] != INF) {
+                if (from[target] != INF) {
+                    bound = Math.max(bound, from[target] - from[v]);
+                } else {
+                    // L能到达v而到不了t，说明v也到不了t
+                    return INF;
+                }
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * 记录一次查询确定了最短距离的节点数.
+     *
+     * @param settled 节点数.
+     */
+    void record(final int settled) {
+        queries.increment();
+        settledNodes.add(settled);
+    }
+
+    /**
+     * 获取已记录的查询次数.
+     *
+     * @return 查询次数.
+     */
+    long queryCount() {
+        return queries.sum();
+    }
+
+    /**
+     * 获取平均每次查询确定了最短距离的节点数.
+     *
+     * @return 平均节点数，没有查询时为0.
+     */
+    double averageSettled() {
+        long q = queries.sum();
+        return q == 0 ? 0 : (double) settledNodes.sum() / q;
+    }
+
+    /**
+     * 把索引写入输出流.
+     *
+     * @param out        输出流.
+     * @param nodeCount  所属图的节点数，用于加载时校验.
+     * @param version    所属图的版本号，用于加载时校验.
+     * @throws IOException 写入失败时抛出.
+     */
+    void writeTo(final DataOutput out, final int nodeCount,
+                 final long version) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeLong(version);
+        out.writeInt(nodeCount);
+        out.writeInt(landmarks.length);
+        for (int i = 0; i < landmarks.length; i++) {
+            out.writeInt(landmarks[i]);
+            for (int v = 0; v < nodeCount; v++) {
+                out.writeInt(fromLandmark[i][v]);
+            }
+            for (int v = 0; v < nodeCount; v++) {
+                out.writeInt(toLandmark[i][v]);
+            }
+        }
+    }
+
+    /**
+     * 从输入流读取索引.
+     *
+     * @param in        输入流.
+     * @param nodeCount 所属图的节点数.
+     * @param version   所属图的版本号.
+     * @return 地标索引.
+     * @throws IOException 读取失败或与图不匹配时抛出.
+     */
+    static LandmarkIndex readFrom(final DataInput in, final int nodeCount,
+                                  final long version) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a landmark index");
+        }
+        long built = in.readLong();
+        if (built != version) {
+            throw new IOException("landmark index built for graph version "
+                    + built + ", graph is at version " + version);
+        }
+        int n = in.readInt();
+        if (n != nodeCount) {
+            throw new IOException("landmark index built for " + n
+                    + " nodes, graph has " + nodeCount);
+        }
+        int k = in.readInt();
+        int[] ids = new int[k];
+        int[][] from = new int[k][n];
+        int[][] to = new int[k][n];
+        for (int i = 0; i < k; i++) {
+            ids[i] = in.readInt();
+            for (int v = 0; v < n; v++) {
+                from[i][v] = in.readInt();
+            }
+            for (int v = 0; v < n; v++) {
+                to[i][v] = in.readInt();
+            }
+        }
+        return new LandmarkIndex(ids, from, to);
+    }
+
+    /**
+     * 把索引保存到文件.
+     *
+     * @param path      文件路径.
+     * @param nodeCount 所属图的节点数.
+     * @param version   所属图的版本号.
+     * @throws IOException 写入失败时抛出.
+     */
+    void save(final Path path, final int nodeCount, final long version)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+            writeTo(out, nodeCount, version);
+        }
+    }
+
+    /**
+     * 从文件加载索引.
+     *
+     * @param path      文件路径.
+     * @param nodeCount 所属图的节点数.
+     * @param version   所属图的版本号.
+     * @return 地标索引.
+     * @throws IOException 读取失败或与图不匹配时抛出.
+     */
+    static LandmarkIndex load(final Path path, final int nodeCount,
+                              final long version) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            return readFrom(in, nodeCount, version);
+        }
+    }
+}
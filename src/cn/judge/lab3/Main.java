@@ -1,18 +1,31 @@
 package cn.judge.lab3;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main类包含程序的入口点和用户交互逻辑.
  */
 public final class Main {
+    /**
+     * 图快照的文件路径.
+     */
+    private static final String SNAPSHOT_FILE = "graph.snapshot";
+
+    /**
+     * 服务模式的默认端口.
+     */
+    private static final int DEFAULT_PORT = 8080;
+
+    /**
+     * 打开指标记录（-Dlab3.metrics=true）时输出指标报告的间隔秒数.
+     */
+    private static final long METRICS_PERIOD_SECONDS = 60;
 
     /**
      * 隐藏工具类构造器.
@@ -24,30 +37,34 @@ public final class Main {
     /**
      * 程序入口点.
      *
-     * @param args 命令行参数.
+     * @param args 命令行参数，"--serve [端口]"表示以本地HTTP服务模式运行.
      */
     public static void main(final String[] args) {
         String filePath = "./resources/textfile.txt";
         DirectedGraph graph = new DirectedGraph();
+        if (GraphMetrics.isEnabled()) {
+            graph.metrics().dumpEvery(METRICS_PERIOD_SECONDS,
+                    TimeUnit.SECONDS, System.err::print);
+        }
 
-        try (BufferedReader reader =
-                     new BufferedReader(new FileReader(filePath))) {
-            StringBuilder textBuilder = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                textBuilder.append(line);
-                // 在每行后添加空格以模拟换行符被当作空格处理
-                textBuilder.append(" ");
+        try {
+            // 功能需求1：读入文本并生成有向图，文本未变化时直接加载快照
+            graph.buildGraphFromFile(Paths.get(filePath),
+                    Paths.get(SNAPSHOT_FILE));
+            if (graph.snapshotFailure() != null) {
+                System.err.println("Ignoring snapshot: "
+                        + graph.snapshotFailure().getMessage());
             }
-            String text = textBuilder.toString();
-
-            // 功能需求1：读入文本并生成有向图
-            graph.buildGraphFromText(text);
-
         } catch (IOException e) {
             e.printStackTrace();
         }
 
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(graph, args.length > 1
+                    ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         System.out.println("Do you want to choose a task: Y/N");
         String choice1 = scanner.nextLine();
@@ -69,29 +86,10 @@ public final class Main {
             if (choice2.equals("1")) {
                 // 功能需求2：展示有向图
                 String dotFileName = "graph.dot";
-                try (BufferedWriter writer =
-                             new BufferedWriter(new FileWriter(dotFileName))) {
-                    writer.write("digraph G {\n");
-
-                    for (Map.Entry<Node, List<Node>> entry
-                            : graph.getAdjacencyList().entrySet()) {
-                        Node from = entry.getKey();
-                        List<Node> toNodes = entry.getValue();
-
-                        for (Node to : toNodes) {
-                            // from节点的adjacencies映射以获取与to节点的权重
-                            int weight = from.getAdjacencies()
-                                    .getOrDefault(to, 1); // 如果没有权重，默认为1
-                            writer.write("\t\"" + from.getLabel()
-                                    + "\" -> \"" + to.getLabel()
-                                    + "\" [label=\"" + weight + "\"];\n");
-                        }
-                    }
-
-                    writer.write("}");
+                try {
+                    graph.exportDot(dotFileName, Collections.emptyList());
                     System.out.println(
                             "Graph has been written to " + dotFileName);
-
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -137,5 +135,30 @@ public final class Main {
                 choice1 = scanner.nextLine();
             }
         }
+        // 等待尚未完成的渲染
+        DirectedGraph.shutdownRenderer();
+        if (GraphMetrics.isEnabled()) {
+            System.err.print(graph.metrics().report());
+        }
+    }
+
+    /**
+     * 以本地HTTP服务模式运行，直到进程被终止.
+     *
+     * @param graph 已构建的图.
+     * @param port  监听端口.
+     */
+    private static void serve(final DirectedGraph graph, final int port) {
+        try {
+            QueryServer server = new QueryServer(new ConcurrentGraph(graph),
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                            port), QueryServer.DEFAULT_MAX_CONCURRENT);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+            System.out.println("Serving on http://localhost:"
+                    + server.port() + "/");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 }
@@ -1,11 +1,11 @@
 package cn.judge.lab3;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 
 /**
  * Node类表示图中的一个节点.
+ * 边表以节点编号为键，只能在DirectedGraph分配了编号的节点之间增加边；
+ * 边表是包内的EdgeWeights，不再以Map的形式公开，也不能整体替换.
  */
 class Node {
     /**
@@ -14,10 +14,24 @@ class Node {
     private String label;
 
     /**
-     * 邻接表，用于存储与该节点相邻的其他节点及其相邻次数.
-     * 键是相邻的Node对象，值是相邻的次数.
+     * 标签的哈希值，随标签一起更新.
      */
-    private Map<Node, Integer> adjacencies = new HashMap<>();
+    private int hash;
+
+    /**
+     * 节点的整数编号，由DirectedGraph按创建顺序分配，未登记时为-1.
+     */
+    private int id = -1;
+
+    /**
+     * 出边表，以相邻节点的编号为键存储相邻的次数.
+     */
+    private final EdgeWeights adjacencies = new EdgeWeights();
+
+    /**
+     * 入边表，以前驱节点的编号为键存储相邻的次数，与出边表同时维护.
+     */
+    private final EdgeWeights predecessors = new EdgeWeights();
 
     /**
      * 构造一个带有给定标签的新节点.
@@ -25,7 +39,7 @@ class Node {
      * @param nodelabel 节点的标签.
      */
     Node(final String nodelabel) {
-        this.label = nodelabel;
+        setLabel(nodelabel);
     }
 
     /**
@@ -44,24 +58,53 @@ class Node {
      */
     public void setLabel(final String newLabel) {
         this.label = newLabel;
+        this.hash = Objects.hash(newLabel);
+    }
+
+    /**
+     * 获取节点的整数编号.
+     *
+     * @return 节点编号，未登记时为-1.
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * 设置节点的整数编号.
+     *
+     * @param newId 节点的新编号.
+     */
+    void setId(final int newId) {
+        this.id = newId;
     }
 
     /**
-     * 获取节点的邻接表.
+     * 获取节点的出边表.
      *
-     * @return 节点的邻接表.
+     * @return 节点的出边表，按相邻节点第一次出现的顺序.
      */
-    public Map<Node, Integer> getAdjacencies() {
+    EdgeWeights getAdjacencies() {
         return adjacencies;
     }
 
     /**
-     * 设置节点的邻接表.
+     * 获取节点的入边表.
+     *
+     * @return 节点的入边表，按前驱节点第一次出现的顺序.
+     */
+    EdgeWeights getPredecessors() {
+        return predecessors;
+    }
+
+    /**
+     * 获取与另一个节点的相邻次数.
      *
-     * @param newAdjacencies 节点的新邻接表.
+     * @param to 目标节点.
+     * @return 相邻次数，不相邻时返回0.
      */
-    public void setAdjacencies(final Map<Node, Integer> newAdjacencies) {
-        this.adjacencies = newAdjacencies;
+    int weightTo(final Node to) {
+        return adjacencies.weight(to.getId());
     }
 
     /**
@@ -69,10 +112,26 @@ class Node {
      * 如果该节点在邻接表中不存在，则添加它并设置相邻次数为1.
      * 如果已经存在，则将其相邻次数加1.
      *
-     * @param to 目标节点.
+     * @param to 目标节点，必须已由DirectedGraph分配编号.
+     */
+    void incrementAdjacency(final Node to) {
+        incrementAdjacency(to, 1);
+    }
+
+    /**
+     * 把与另一个节点的相邻次数增加指定的值，同时更新目标节点的入边表.
+     *
+     * @param to    目标节点，必须已由DirectedGraph分配编号.
+     * @param count 增加的次数.
+     * @return 此前两个节点不相邻时返回true.
      */
-    public void incrementAdjacency(final Node to) {
-        adjacencies.put(to, adjacencies.getOrDefault(to, 0) + 1);
+    boolean incrementAdjacency(final Node to, final int count) {
+        if (id < 0 || to.id < 0) {
+            throw new IllegalStateException("node \"" + (id < 0 ? label
+                    : to.label) + "\" has not been added to a graph");
+        }
+        to.predecessors.add(id, count);
+        return adjacencies.add(to.getId(), count);
     }
 
     @Override
@@ -94,6 +153,6 @@ class Node {
 
     @Override
     public int hashCode() {
-        return Objects.hash(label);
+        return hash;
     }
 }
@@ -0,0 +1,298 @@
+package cn.judge.lab3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * PageRank类在紧凑图上计算带权PageRank，衡量单词的重要程度.
+ * 从单词u出发沿边(u, v)的概率为该边权重占u所有出边权重之和的比例；
+ * 没有出边的节点（例如文本的最后一个单词）把它的分数平均分给所有节点.
+ * 使用幂迭代，每轮每个节点从入边拉取分数，只读写基本类型数组；
+ * 节点按块在多个线程中并行处理，各块的部分和按块的顺序相加，
+ * 因此结果与线程数无关. 两轮之间分数变化的L1范数不超过容差，
+ * 或达到迭代次数上限时停止.
+ */
+final class PageRank {
+    /**
+     * 默认阻尼系数.
+     */
+    static final double DEFAULT_DAMPING = 0.85;
+
+    /**
+     * 默认容差.
+     */
+    static final double DEFAULT_TOLERANCE = 1e-9;
+
+    /**
+     * 默认迭代次数上限.
+     */
+    static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    /**
+     * 默认每个并行任务处理的节点数.
+     */
+    static final int DEFAULT_BLOCK = 4096;
+
+    /**
+     * 紧凑图.
+     */
+    private final CompactGraph graph;
+
+    /**
+     * 阻尼系数，即沿边前进而不是随机跳转的概率.
+     */
+    private final double damping;
+
+    /**
+     * 收敛容差.
+     */
+    private final double tolerance;
+
+    /**
+     * 迭代次数上限.
+     */
+    private final int maxIterations;
+
+    /**
+     * 并行线程数.
+     */
+    private final int parallelism;
+
+    /**
+     * 每个并行任务处理的节点数，也是部分和的划分单位.
+     */
+    private final int block;
+
+    /**
+     * 每个节点的分数，总和为1.
+     */
+    private double[] ranks;
+
+    /**
+     * 实际迭代次数.
+     */
+    private int iterations;
+
+    /**
+     * 最后一轮分数变化的L1范数.
+     */
+    private double residual = Double.POSITIVE_INFINITY;
+
+    /**
+     * 构造一次PageRank计算，调用compute后可以读取结果.
+     *
+     * @param compactGraph 紧凑图.
+     * @param dampingFactor 阻尼系数，取值在[0, 1).
+     * @param convergence  容差，分数变化的L1范数不超过它时停止.
+     * @param iterationLimit 迭代次数上限.
+     * @param threads      并行线程数.
+     */
+    PageRank(final CompactGraph compactGraph, final double dampingFactor,
+             final double convergence, final int iterationLimit,
+             final int threads) {
+        this(compactGraph, dampingFactor, convergence, iterationLimit,
+                threads, DEFAULT_BLOCK);
+    }
+
+    /**
+     * 构造一次PageRank计算，并指定每个并行任务处理的节点数.
+     * 块大小决定部分和的划分，块大小相同时结果与线程数无关.
+     *
+     * @param compactGraph 紧凑图.
+     * @param dampingFactor 阻尼系数，取值在[0, 1).
+     * @param convergence  容差，分数变化的L1范数不超过它时停止.
+     * @param iterationLimit 迭代次数上限.
+     * @param threads      并行线程数.
+     * @param blockSize    每个并行任务处理的节点数.
+     */
+    PageRank(final CompactGraph compactGraph, final double dampingFactor,
+             final double convergence, final int iterationLimit,
+             final int threads, final int blockSize) {
+        if (!(dampingFactor >= 0 && dampingFactor < 1)) {
+            throw new IllegalArgumentException(
+                    "damping must be in [0, 1): " + dampingFactor);
+        }
+        if (!(convergence >= 0) || iterationLimit <= 0 || threads <= 0
+                || blockSize <= 0) {
+            throw new IllegalArgumentException("tolerance must not be"
+                    + " negative, iterations, parallelism and block size"
+                    + " must be positive");
+        }
+        this.graph = compactGraph;
+        this.damping = dampingFactor;
+        this.tolerance = convergence;
+        this.maxIterations = iterationLimit;
+        this.parallelism = threads;
+        this.block = blockSize;
+    }
+
+    /**
+     * 执行幂迭代.
+     *
+     * @return this，便于链式调用.
+     */
+    PageRank compute() {
+        int n = graph.nodeCount();
+        ranks = new double[n];
+        iterations = 0;
+        if (n == 0) {
+            residual = 0;
+            return this;
+        }
+        double[] invOut = new double[n];
+        for (int u = 0; u < n; u++) {
+            long total = 0;
+            for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                total += graph.weight(e);
+            }
+            invOut[u] = total == 0 ? 0 : 1.0 / total;
+        }
+        double[] next = new double[n];
+        double[] contrib = new double[n];
+        int blocks = (n + block - 1) / block;
+        double[] partial = new double[blocks];
+        Arrays.fill(ranks, 1.0 / n);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            while (iterations < maxIterations) {
+                double[] current = ranks;
+                double[] updated = next;
+                // 第一步：每个节点沿每单位出边权重送出的分数，
+                // 同时累计没有出边的节点的分数
+                inBlocks(pool, blocks, b -> {
+                    double dangling = 0;
+                    for (int u = b * block; u < Math.min(n, (b + 1) * block);
+                         u++) {
+                        contrib[u] = current[u] * invOut[u];
+                        if (invOut[u] == 0) {
+                            dangling += current[u];
+                        }
+                    }
+                    partial[b] = dangling;
+                });
+                double base = (1 - damping) / n
+                        + damping * sum(partial) / n;
+                // 第二步：每个节点从入边拉取分数，同时累计与上一轮的差
+                inBlocks(pool, blocks, b -> {
+                    double diff = 0;
+                    for (int v = b * block; v < Math.min(n, (b + 1) * block);
+                         v++) {
+                        double in = 0;
+                        for (int e = graph.inEdgeStart(v);
+                             e < graph.inEdgeEnd(v); e++) {
+                            in += contrib[graph.source(e)] * graph.inWeight(e);
+                        }
+                        updated[v] = base + damping * in;
+                        diff += Math.abs(updated[v] - current[v]);
+                    }
+                    partial[b] = diff;
+                });
+                residual = sum(partial);
+                ranks = updated;
+                next = current;
+                iterations++;
+                if (residual <= tolerance) {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return this;
+    }
+
+    private static void inBlocks(final ForkJoinPool pool, final int blocks,
+                                 final IntConsumer body) {
+        pool.submit(() -> IntStream.range(0, blocks).parallel().forEach(body))
+                .join();
+    }
+
+    private static double sum(final double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    /**
+     * 获取节点的分数.
+     *
+     * @param id 节点编号.
+     * @return 分数.
+     */
+    double rank(final int id) {
+        return ranks[id];
+    }
+
+    /**
+     * 获取单词的分数.
+     *
+     * @param word 单词.
+     * @return 分数，单词不在图中时返回0.
+     */
+    double rank(final String word) {
+        int id = graph.id(word);
+        return id < 0 ? 0 : ranks[id];
+    }
+
+    /**
+     * 获取分数最高的k个单词.
+     *
+     * @param k 最多返回的单词数.
+     * @return 按分数从高到低排列的单词，分数相同时编号小的在前.
+     */
+    List<String> top(final int k) {
+        PriorityQueue<Integer> heap = new PriorityQueue<>(
+                (a, b) -> ranks[a] != ranks[b]
+                        ? Double.compare(ranks[a], ranks[b])
+                        : Integer.compare(b, a));
+        for (int id = 0; id < ranks.length && k > 0; id++) {
+            if (heap.size() < k) {
+                heap.add(id);
+            } else if (heap.comparator().compare(id, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(id);
+            }
+        }
+        List<String> words = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            words.add(graph.word(heap.poll()));
+        }
+        Collections.reverse(words);
+        return words;
+    }
+
+    /**
+     * 获取实际迭代次数.
+     *
+     * @return 迭代次数.
+     */
+    int iterations() {
+        return iterations;
+    }
+
+    /**
+     * 获取最后一轮分数变化的L1范数.
+     *
+     * @return 残差.
+     */
+    double residual() {
+        return residual;
+    }
+
+    /**
+     * 判断是否在迭代次数上限之内收敛.
+     *
+     * @return 收敛时返回true.
+     */
+    boolean converged() {
+        return residual <= tolerance;
+    }
+}
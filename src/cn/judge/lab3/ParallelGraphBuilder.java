@@ -0,0 +1,382 @@
+package cn.judge.lab3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParallelGraphBuilder类在fork-join线程池上并行构建有向图.
+ * 文本在非字母字符处被切分为若干段，每段在各自的线程中统计局部的
+ * 单词表和边计数表，再按段的顺序两两合并，并补上跨段的边.
+ * 合并保留单词首次出现的顺序和每条边首次出现的顺序，
+ * 因此结果与顺序构建得到的图完全一致.
+ */
+final class ParallelGraphBuilder {
+    /**
+     * 每段文本的最小字符数，过小的段不值得单独调度.
+     */
+    static final int MIN_SEGMENT_LENGTH = 64 * 1024;
+
+    /**
+     * 每个工作线程分到的段数，多切几段便于负载均衡.
+     */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    /**
+     * 并行度.
+     */
+    private final int parallelism;
+
+    /**
+     * 每段文本的最小字符数.
+     */
+    private final int minSegmentLength;
+
+    /**
+     * 构造一个使用指定并行度的构建器.
+     *
+     * @param threads 并行线程数.
+     */
+    ParallelGraphBuilder(final int threads) {
+        this(threads, MIN_SEGMENT_LENGTH);
+    }
+
+    /**
+     * 构造一个使用指定并行度的构建器，并指定每段文本的最小字符数.
+     * 段的划分不影响结果，较小的段只用于在短文本上检验合并.
+     *
+     * @param threads       并行线程数.
+     * @param segmentLength 每段文本的最小字符数.
+     */
+    ParallelGraphBuilder(final int threads, final int segmentLength) {
+        if (threads <= 0 || segmentLength <= 0) {
+            throw new IllegalArgumentException("parallelism and segment"
+                    + " length must be positive");
+        }
+        this.parallelism = threads;
+        this.minSegmentLength = segmentLength;
+    }
+
+    /**
+     * 并行统计文本中的单词和边，并把结果加入有向图.
+     *
+     * @param text  输入的文本.
+     * @param graph 目标有向图.
+     */
+    void build(final CharSequence text, final DirectedGraph graph) {
+        int[] cuts = segmentBoundaries(text);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Partial merged;
+        try {
+            merged = pool.invoke(new SegmentTask(text, cuts, 0,
+                    cuts.length - 1));
+        } finally {
+            pool.shutdown();
+        }
+        merged.applyTo(graph);
+    }
+
+    /**
+     * 计算各段的边界，切分点总是落在非字母字符上.
+     *
+     * @param text 输入的文本.
+     * @return 边界数组，第i段为[cuts[i], cuts[i + 1]).
+     */
+    int[] segmentBoundaries(final CharSequence text) {
+        int length = text.length();
+        int segments = Math.max(1, Math.min(parallelism * SEGMENTS_PER_THREAD,
+                length / minSegmentLength));
+        List<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        for (int i = 1; i < segments; i++) {
+            int cut = (int) ((long) length * i / segments);
+            while (cut < length && WordTokenizer.isLetter(text.charAt(cut))) {
+                cut++;
+            }
+            if (cut > cuts.get(cuts.size() - 1) && cut < length) {
+                cuts.add(cut);
+            }
+        }
+        cuts.add(length);
+        return cuts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * 统计一段文本或合并相邻的若干段.
+     */
+    private static final class SegmentTask extends RecursiveTask<Partial> {
+        /**
+         * 序列化版本号.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 输入的文本.
+         */
+        private final transient CharSequence text;
+
+        /**
+         * 段边界.
+         */
+        private final int[] cuts;
+
+        /**
+         * 第一段的下标.
+         */
+        private final int from;
+
+        /**
+         * 最后一段之后的下标.
+         */
+        private final int to;
+
+        SegmentTask(final CharSequence input, final int[] segmentCuts,
+                    final int fromSegment, final int toSegment) {
+            this.text = input;
+            this.cuts = segmentCuts;
+            this.from = fromSegment;
+            this.to = toSegment;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= 1) {
+                return Partial.scan(text, cuts[from], cuts[to]);
+            }
+            int mid = (from + to) >>> 1;
+            SegmentTask right = new SegmentTask(text, cuts, mid, to);
+            right.fork();
+            Partial left = new SegmentTask(text, cuts, from, mid).compute();
+            return left.merge(right.join());
+        }
+    }
+
+    /**
+     * 一段或若干相邻段的局部统计结果.
+     */
+    static final class Partial {
+        /**
+         * 按首次出现顺序驻留的单词，编号即局部编号.
+         */
+        private final WordTable words = new WordTable();
+
+        /**
+         * 按首次出现顺序排列的边计数.
+         */
+        private final EdgeCounts edges = new EdgeCounts();
+
+        /**
+         * 第一个单词的局部编号，没有单词时为-1.
+         */
+        private int first = -1;
+
+        /**
+         * 最后一个单词的局部编号，没有单词时为-1.
+         */
+        private int last = -1;
+
+        /**
+         * 统计文本的一段.
+         * 单词在分词器的缓冲区中按字符区间查找，只有第一次出现时才创建String.
+         *
+         * @param text  输入的文本.
+         * @param start 起始下标.
+         * @param end   结束下标（不含）.
+         * @return 局部统计结果.
+         */
+        static Partial scan(final CharSequence text, final int start,
+                            final int end) {
+            GraphEvents.Ingest event = new GraphEvents.Ingest();
+            event.begin();
+            Partial partial = new Partial();
+            WordTokenizer tokenizer = new WordTokenizer(text, start, end);
+            long count = 0;
+            while (tokenizer.next()) {
+                int id = partial.words.find(tokenizer.buffer(), 0,
+                        tokenizer.length());
+                if (id < 0) {
+                    id = partial.words.intern(tokenizer.word());
+                }
+                partial.appendWord(id);
+                count++;
+            }
+            GraphEvents.commit(event, "segment@" + start, end - start, count);
+            return partial;
+        }
+
+        private void appendWord(final int id) {
+            if (last >= 0) {
+                edges.add(last, id, 1);
+            } else {
+                first = id;
+            }
+            last = id;
+        }
+
+        /**
+         * 把紧随其后的一段合并进来，并补上两段之间的边.
+         *
+         * @param next 后一段的统计结果.
+         * @return 合并后的结果（即this）.
+         */
+        Partial merge(final Partial next) {
+            int[] remap = new int[next.words.size()];
+            for (int i = 0; i < remap.length; i++) {
+                remap[i] = words.intern(next.words.word(i));
+            }
+            if (next.first >= 0) {
+                // 跨段的边出现在前一段所有边之后、后一段所有边之前
+                appendWord(remap[next.first]);
+            }
+            for (int e = 0; e < next.edges.size(); e++) {
+                edges.add(remap[next.edges.from(e)], remap[next.edges.to(e)],
+                        next.edges.weight(e));
+            }
+            if (next.last >= 0) {
+                last = remap[next.last];
+            }
+            return this;
+        }
+
+        /**
+         * 把统计结果加入有向图.
+         *
+         * @param graph 目标有向图.
+         */
+        void applyTo(final DirectedGraph graph) {
+            Node[] nodes = new Node[words.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = graph.nodeOrCreate(words.word(i));
+            }
+            for (int e = 0; e < edges.size(); e++) {
+                graph.addEdge(nodes[edges.from(e)], nodes[edges.to(e)],
+                        edges.weight(e));
+            }
+            if (last >= 0) {
+                graph.endOfText(nodes[last]);
+            }
+        }
+    }
+
+    /**
+     * 边计数表，以(源编号, 目标编号)为键做开放寻址（线性探测），
+     * 键和计数都直接存为基本类型，按边第一次出现的顺序保存.
+     */
+    private static final class EdgeCounts {
+        /**
+         * 初始容量，必须是2的幂.
+         */
+        private static final int INITIAL_CAPACITY = 16;
+
+        /**
+         * 哈希槽位，存放边下标加1，0表示空槽；装载因子不超过1/2.
+         */
+        private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+        /**
+         * 按出现顺序存储的键，高32位为源编号，低32位为目标编号.
+         */
+        private long[] keys = new long[INITIAL_CAPACITY];
+
+        /**
+         * 与keys对应的计数.
+         */
+        private int[] weights = new int[INITIAL_CAPACITY];
+
+        /**
+         * 边数.
+         */
+        private int size;
+
+        /**
+         * 把边的计数增加指定的值，边不存在时追加到末尾.
+         *
+         * @param from   源编号.
+         * @param to     目标编号.
+         * @param weight 增加的计数.
+         */
+        void add(final int from, final int to, final int weight) {
+            long key = ((long) from << 32) | to;
+            int mask = slots.length - 1;
+            for (int i = mix(key) & mask;; i = (i + 1) & mask) {
+                int slot = slots[i];
+                if (slot == 0) {
+                    if (size == keys.length) {
+                        keys = Arrays.copyOf(keys, size * 2);
+                        weights = Arrays.copyOf(weights, size * 2);
+                    }
+                    keys[size] = key;
+                    weights[size] = weight;
+                    slots[i] = ++size;
+                    if (size * 2 > slots.length) {
+                        rehash();
+                    }
+                    return;
+                }
+                if (keys[slot - 1] == key) {
+                    weights[slot - 1] += weight;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 获取边数.
+         *
+         * @return 边数.
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * 获取第e条边的源编号.
+         *
+         * @param e 边下标，按第一次出现的顺序.
+         * @return 源编号.
+         */
+        int from(final int e) {
+            return (int) (keys[e] >>> 32);
+        }
+
+        /**
+         * 获取第e条边的目标编号.
+         *
+         * @param e 边下标，按第一次出现的顺序.
+         * @return 目标编号.
+         */
+        int to(final int e) {
+            return (int) keys[e];
+        }
+
+        /**
+         * 获取第e条边的计数.
+         *
+         * @param e 边下标，按第一次出现的顺序.
+         * @return 计数.
+         */
+        int weight(final int e) {
+            return weights[e];
+        }
+
+        private void rehash() {
+            int[] newSlots = new int[slots.length * 2];
+            int mask = newSlots.length - 1;
+            for (int e = 0; e < size; e++) {
+                int i = mix(keys[e]) & mask;
+                while (newSlots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                newSlots[i] = e + 1;
+            }
+            slots = newSlots;
+        }
+
+        private static int mix(final long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
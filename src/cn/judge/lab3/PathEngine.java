@@ -0,0 +1,522 @@
+package cn.judge.lab3;
+
+import java.util.Arrays;
+
+/**
+ * PathEngine类是紧凑图上不分配内存的最短路径搜索引擎.
+ * 距离、前驱等状态保存在按节点编号索引的int数组中，并用“纪元”
+ * 标记区分不同的查询：某个节点的stamp不等于当前纪元时即视为未访问，
+ * 因此每次查询前无需清空数组. 优先队列使用Dial桶式队列，支持降键.
+ * 点到点查询在终点出队后立即停止；双向查询同时从起点沿出边、
+ * 从终点沿入边搜索，两边相遇且不可能再找到更短路径时停止.
+ * 一个引擎同一时刻只能被一个查询使用，由CompactGraph的对象池借出和归还.
+ */
+final class PathEngine {
+    /**
+     * 不可达节点的距离.
+     */
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * 被搜索的紧凑图.
+     */
+    private final CompactGraph graph;
+
+    /**
+     * 每个节点的最短距离，仅在stamp等于当前纪元时有效.
+     */
+    private final int[] dist;
+
+    /**
+     * 每个节点的前驱，仅在stamp等于当前纪元时有效.
+     */
+    private final int[] previous;
+
+    /**
+     * 每个节点最近一次被访问时的纪元.
+     */
+    private final int[] stamp;
+
+    /**
+     * 优先队列.
+     */
+    private final BucketQueue queue;
+
+    /**
+     * 反向搜索中每个节点到终点的最短距离，首次双向查询时分配.
+     */
+    private int[] backDist;
+
+    /**
+     * 反向搜索中每个节点在最短路径上的后继.
+     */
+    private int[] backNext;
+
+    /**
+     * 反向搜索中每个节点最近一次被访问时的纪元.
+     */
+    private int[] backStamp;
+
+    /**
+     * 反向搜索的优先队列.
+     */
+    private BucketQueue backQueue;
+
+    /**
+     * A*搜索使用的优先队列，键的跨度取决于地标距离，首次A*查询时分配.
+     */
+    private BucketQueue astarQueue;
+
+    /**
+     * astarQueue支持的键跨度.
+     */
+    private int astarSpan;
+
+    /**
+     * A*搜索中已计算过的启发值，仅在heuristicStamp等于当前纪元时有效.
+     */
+    private int[] heuristic;
+
+    /**
+     * 每个节点的启发值最近一次被计算时的纪元.
+     */
+    private int[] heuristicStamp;
+
+    /**
+     * 最近一次点到点查询的终点，没有时为-1.
+     */
+    private int lastTarget = -1;
+
+    /**
+     * 最近一次双向查询中最短路径经过的相遇节点，单向查询时为-1.
+     */
+    private int meet = -1;
+
+    /**
+     * 当前纪元.
+     */
+    private int epoch;
+
+    /**
+     * 最近一次查询确定了最短距离的节点数.
+     */
+    private int settled;
+
+    /**
+     * 最近一次查询的入队（含降键）次数.
+     */
+    private int pushes;
+
+    /**
+     * 为紧凑图构造一个搜索引擎.
+     *
+     * @param compact 紧凑图.
+     */
+    PathEngine(final CompactGraph compact) {
+        this.graph = compact;
+        int n = compact.nodeCount();
+        dist = new int[n];
+        previous = new int[n];
+        stamp = new int[n];
+        queue = new BucketQueue(n, compact.maxWeight());
+    }
+
+    /**
+     * 从source出发搜索到所有可达节点的最短路径.
+     *
+     * @param source 起点编号.
+     */
+    void search(final int source) {
+        search(source, -1);
+    }
+
+    /**
+     * 从source出发搜索最短路径，终点出队后立即停止.
+     *
+     * @param source 起点编号.
+     * @param target 终点编号，为-1时搜索所有可达节点.
+     * @return 到终点的最短距离，target为-1或不可达时为UNREACHABLE.
+     */
+    int search(final int source, final int target) {
+        return search(source, target, UNREACHABLE);
+    }
+
+    /**
+     * 从source出发搜索最短路径，终点出队或出队的距离超过limit后立即停止.
+     * 停止时距离不超过limit的节点都已确定，其余节点的distance不是最终结果.
+     *
+     * @param source 起点编号.
+     * @param target 终点编号，为-1时搜索所有可达节点.
+     * @param limit  距离上限.
+     * @return 到终点的最短距离，target为-1、不可达或超过上限时为UNREACHABLE.
+     */
+    int search(final int source, final int target, final int limit) {
+        nextEpoch();
+        lastTarget = target;
+        meet = -1;
+        visit(source, 0, -1);
+        queue.push(source, 0);
+        pushes++;
+        while (!queue.isEmpty()) {
+            int u = queue.pop();
+            if (dist[u] > limit) {
+                lastTarget = -1; // 终点超出上限，不给出路径
+                break;
+            }
+            settled++;
+            if (u == target) {
+                return dist[u];
+            }
+            int d = dist[u];
+            for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                int v = graph.target(e);
+                int nd = d + graph.weight(e);
+                if (stamp[v] != epoch || nd < dist[v]) {
+                    visit(v, nd, u);
+                    queue.push(v, nd);
+                    pushes++;
+                }
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    /**
+     * 双向搜索从source到target的最短路径.
+     * 每一步扩展队首键较小的一侧，当两侧队首键之和不小于已找到的
+     * 最短路径长度时停止.
+     *
+     * @param source 起点编号.
+     * @param target 终点编号.
+     * @return 最短距离，不可达时为UNREACHABLE.
+     */
+    int bidirectional(final int source, final int target) {
+        nextEpoch();
+        ensureBackward();
+        lastTarget = target;
+        meet = -1;
+        visit(source, 0, -1);
+        queue.push(source, 0);
+        backVisit(target, 0, -1);
+        backQueue.push(target, 0);
+        pushes += 2;
+        long best = source == target ? 0 : Long.MAX_VALUE;
+        if (source == target) {
+            meet = source;
+        }
+        while (!queue.isEmpty() && !backQueue.isEmpty()
+                && (long) queue.peekKey() + backQueue.peekKey() < best) {
+            if (queue.peekKey() <= backQueue.peekKey()) {
+                int u = queue.pop();
+                settled++;
+                int d = dist[u];
+                for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                    int v = graph.target(e);
+                    int nd = d + graph.weight(e);
+                    if (stamp[v] != epoch || nd < dist[v]) {
+                        visit(v, nd, u);
+                        queue.push(v, nd);
+                        pushes++;
+                    }
+                    if (backStamp[v] == epoch
+                            && (long) dist[v] + backDist[v] < best) {
+                        best = (long) dist[v] + backDist[v];
+                        meet = v;
+                    }
+                }
+            } else {
+                int u = backQueue.pop();
+                settled++;
+                int d = backDist[u];
+                for (int e = graph.inEdgeStart(u); e < graph.inEdgeEnd(u);
+                     e++) {
+                    int v = graph.source(e);
+                    int nd = d + graph.inWeight(e);
+                    if (backStamp[v] != epoch || nd < backDist[v]) {
+                        backVisit(v, nd, u);
+                        backQueue.push(v, nd);
+                        pushes++;
+                    }
+                    if (stamp[v] == epoch
+                            && (long) dist[v] + backDist[v] < best) {
+                        best = (long) dist[v] + backDist[v];
+                        meet = v;
+                    }
+                }
+            }
+        }
+        return meet < 0 ? UNREACHABLE : (int) best;
+    }
+
+    /**
+     * 沿入边从target出发反向搜索，得到所有节点到target的最短距离.
+     * 结果通过backwardDistance读取.
+     *
+     * @param target 终点编号.
+     */
+    void searchBackward(final int target) {
+        nextEpoch();
+        ensureBackward();
+        lastTarget = -1;
+        meet = -1;
+        backVisit(target, 0, -1);
+        backQueue.push(target, 0);
+        pushes++;
+        while (!backQueue.isEmpty()) {
+            int u = backQueue.pop();
+            settled++;
+            int d = backDist[u];
+            for (int e = graph.inEdgeStart(u); e < graph.inEdgeEnd(u); e++) {
+                int v = graph.source(e);
+                int nd = d + graph.inWeight(e);
+                if (backStamp[v] != epoch || nd < backDist[v]) {
+                    backVisit(v, nd, u);
+                    backQueue.push(v, nd);
+                    pushes++;
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取最近一次反向搜索中节点到终点的最短距离.
+     *
+     * @param node 节点编号.
+     * @return 最短距离，不可达时为UNREACHABLE.
+     */
+    int backwardDistance(final int node) {
+        return backStamp != null && backStamp[node] == epoch
+                ? backDist[node] : UNREACHABLE;
+    }
+
+    /**
+     * 以地标下界为启发函数的A*点到点搜索，终点出队后立即停止.
+     * 地标能证明不可能到达终点的节点直接剪枝.
+     *
+     * @param source    起点编号.
+     * @param target    终点编号.
+     * @param landmarks 地标索引.
+     * @return 最短距离，不可达时为UNREACHABLE.
+     */
+    int aStar(final int source, final int target,
+              final LandmarkIndex landmarks) {
+        nextEpoch();
+        int span = graph.maxWeight() + landmarks.maxDistance();
+        if (astarQueue == null || astarSpan < span) {
+            // 启发值不超过地标的最大有限距离，键的跨度不超过最大边权加上它
+            astarQueue = new BucketQueue(graph.nodeCount(), span);
+            astarSpan = span;
+            heuristic = new int[graph.nodeCount()];
+            heuristicStamp = new int[graph.nodeCount()];
+        } else {
+            astarQueue.clear();
+        }
+        lastTarget = target;
+        meet = -1;
+        int h = estimate(source, target, landmarks);
+        if (h == UNREACHABLE) {
+            return UNREACHABLE;
+        }
+        visit(source, 0, -1);
+        astarQueue.push(source, h);
+        pushes++;
+        while (!astarQueue.isEmpty()) {
+            int u = astarQueue.pop();
+            settled++;
+            if (u == target) {
+                return dist[u];
+            }
+            int d = dist[u];
+            for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                int v = graph.target(e);
+                int nd = d + graph.weight(e);
+                if (stamp[v] == epoch && nd >= dist[v]) {
+                    continue;
+                }
+                int hv = estimate(v, target, landmarks);
+                if (hv == UNREACHABLE) {
+                    continue;
+                }
+                visit(v, nd, u);
+                astarQueue.push(v, nd + hv);
+                pushes++;
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    /**
+     * 计算并缓存节点的启发值.
+     */
+    private int estimate(final int node, final int target,
+                         final LandmarkIndex landmarks) {
+        if (heuristicStamp[node] != epoch) {
+            heuristicStamp[node] = epoch;
+            heuristic[node] = landmarks.lowerBound(node, target);
+        }
+        return heuristic[node];
+    }
+
+    /**
+     * 获取最近一次点到点查询找到的路径上的节点数.
+     *
+     * @return 节点数，不可达时为0.
+     */
+    int pathLength() {
+        if (meet < 0) {
+            return lastTarget < 0 ? 0 : chainLength(lastTarget);
+        }
+        return chainLength(meet) + backChainLength(meet) - 1;
+    }
+
+    /**
+     * 把最近一次点到点查询找到的路径写入数组.
+     *
+     * @param out 输出数组，长度至少为pathLength().
+     * @return 路径上的节点数，不可达时为0.
+     */
+    int copyPath(final int[] out) {
+        if (meet < 0) {
+            return lastTarget < 0 ? 0 : copyPath(lastTarget, out);
+        }
+        int length = copyPath(meet, out);
+        for (int v = backNext[meet]; v >= 0; v = backNext[v]) {
+            out[length++] = v;
+        }
+        return length;
+    }
+
+    /**
+     * 获取最近一次查询中到节点的最短距离.
+     *
+     * @param node 节点编号.
+     * @return 最短距离，不可达时为UNREACHABLE.
+     */
+    int distance(final int node) {
+        return stamp[node] == epoch ? dist[node] : UNREACHABLE;
+    }
+
+    /**
+     * 获取最近一次查询中节点的前驱.
+     *
+     * @param node 节点编号.
+     * @return 前驱编号，起点或不可达时为-1.
+     */
+    int predecessor(final int node) {
+        return stamp[node] == epoch ? previous[node] : -1;
+    }
+
+    /**
+     * 把最近一次查询中到target的路径写入数组.
+     *
+     * @param target 终点编号.
+     * @param out    输出数组，长度至少为路径上的节点数.
+     * @return 路径上的节点数，不可达时为0.
+     */
+    int copyPath(final int target, final int[] out) {
+        int length = chainLength(target);
+        int i = length;
+        for (int v = target; i > 0; v = previous[v]) {
+            out[--i] = v;
+        }
+        return length;
+    }
+
+    /**
+     * 把最近一次查询的结果复制为最短路径树.
+     *
+     * @param source 查询的起点编号.
+     * @return 最短路径树.
+     */
+    ShortestPathTree toTree(final int source) {
+        int n = graph.nodeCount();
+        int[] treeDist = new int[n];
+        int[] treePrevious = new int[n];
+        for (int v = 0; v < n; v++) {
+            treeDist[v] = distance(v);
+            treePrevious[v] = predecessor(v);
+        }
+        return new ShortestPathTree(graph, source, treeDist, treePrevious);
+    }
+
+    /**
+     * 获取最近一次查询确定了最短距离的节点数.
+     *
+     * @return 节点数.
+     */
+    int settledCount() {
+        return settled;
+    }
+
+    /**
+     * 获取最近一次查询的入队次数.
+     *
+     * @return 入队次数.
+     */
+    int pushCount() {
+        return pushes;
+    }
+
+    private int chainLength(final int target) {
+        if (distance(target) == UNREACHABLE) {
+            return 0;
+        }
+        int length = 0;
+        for (int v = target; v >= 0; v = previous[v]) {
+            length++;
+        }
+        return length;
+    }
+
+    private int backChainLength(final int node) {
+        int length = 0;
+        for (int v = node; v >= 0; v = backNext[v]) {
+            length++;
+        }
+        return length;
+    }
+
+    private void ensureBackward() {
+        if (backQueue == null) {
+            int n = graph.nodeCount();
+            backDist = new int[n];
+            backNext = new int[n];
+            backStamp = new int[n];
+            backQueue = new BucketQueue(n, graph.maxWeight());
+        } else {
+            backQueue.clear();
+        }
+    }
+
+    private void backVisit(final int node, final int distance,
+                           final int next) {
+        backStamp[node] = epoch;
+        backDist[node] = distance;
+        backNext[node] = next;
+    }
+
+    private void visit(final int node, final int distance,
+                       final int parent) {
+        stamp[node] = epoch;
+        dist[node] = distance;
+        previous[node] = parent;
+    }
+
+    private void nextEpoch() {
+        queue.clear();
+        settled = 0;
+        pushes = 0;
+        epoch++;
+        if (epoch == 0) {
+            // 纪元回绕时清空标记，避免与很久以前的查询混淆
+            Arrays.fill(stamp, 0);
+            if (backStamp != null) {
+                Arrays.fill(backStamp, 0);
+            }
+            if (heuristicStamp != null) {
+                Arrays.fill(heuristicStamp, 0);
+            }
+            epoch = 1;
+        }
+    }
+}
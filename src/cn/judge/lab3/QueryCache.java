@@ -0,0 +1,384 @@
+package cn.judge.lab3;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * QueryCache类缓存以单词对为键的查询结果，按最近最少使用（LRU）淘汰.
+ * 条目数和估计的字节数都有上限，超过任何一个都会淘汰最久未使用的条目.
+ * 每个条目属于图的某个版本：用更新的版本读写时整个缓存被清空，
+ * 用更旧的版本（例如读者仍持有旧快照）读写时缓存不命中也不写入，
+ * 因此不会返回过期的结果. 所有方法都可以被多个线程同时调用.
+ * 条目按键的哈希值分到若干段，每段是一个独立加锁的LRU，各占上限的
+ * 相同份额，多个读者同时查询不会都争用同一把锁；淘汰的是所在段中
+ * 最久未使用的条目. 条目数上限较小时只有一段，是严格的LRU.
+ *
+ * @param <V> 查询结果的类型.
+ */
+final class QueryCache<V> {
+    /**
+     * 默认的条目数上限.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    /**
+     * 默认的字节数上限.
+     */
+    static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * 段数上限，必须是2的幂.
+     */
+    private static final int MAX_SEGMENTS = 16;
+
+    /**
+     * 分段后每段至少容纳的条目数.
+     */
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+
+    /**
+     * 估计大小时每个条目的固定开销：键对象、链表节点和值的引用.
+     */
+    private static final long ENTRY_OVERHEAD = 96;
+
+    /**
+     * 估计大小时每个String的固定开销.
+     */
+    private static final long STRING_OVERHEAD = 40;
+
+    /**
+     * 估计查询结果的字节数.
+     */
+    private final ToLongFunction<V> weigher;
+
+    /**
+     * 按键的哈希值划分的段.
+     */
+    private final Segment<V>[] segments;
+
+    /**
+     * 命中次数.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * 未命中次数.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 因超过上限被淘汰的条目数，不含图修改时清空的条目.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 构造一个缓存.
+     *
+     * @param entryLimit 条目数上限，为0时不缓存任何结果.
+     * @param byteLimit  估计的字节数上限.
+     * @param sizeOf     估计查询结果的字节数，不含键.
+     */
+    QueryCache(final int entryLimit, final long byteLimit,
+               final ToLongFunction<V> sizeOf) {
+        if (entryLimit < 0 || byteLimit < 0) {
+            throw new IllegalArgumentException(
+                    "cache limits must not be negative");
+        }
+        this.weigher = sizeOf;
+        int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(
+                Math.max(1, entryLimit / MIN_SEGMENT_ENTRIES)));
+        @SuppressWarnings("unchecked")
+        Segment<V>[] parts = (Segment<V>[]) new Segment<?>[count];
+        for (int i = 0; i < count; i++) {
+            // 向上取整，各段上限之和不小于总上限
+            parts[i] = new Segment<>((entryLimit + count - 1) / count,
+                    byteLimit / count + (byteLimit % count == 0 ? 0 : 1));
+        }
+        this.segments = parts;
+    }
+
+    /**
+     * 估计字符串结果的字节数，供字符串类型的缓存使用.
+     *
+     * @param value 字符串.
+     * @return 字节数.
+     */
+    static long stringBytes(final String value) {
+        return STRING_OVERHEAD + value.length();
+    }
+
+    /**
+     * 查找缓存的结果.
+     *
+     * @param graphVersion 查询所用的图版本.
+     * @param word1        第一个单词.
+     * @param word2        第二个单词.
+     * @return 缓存的结果，没有时返回null.
+     */
+    V get(final long graphVersion, final String word1, final String word2) {
+        Key key = new Key(word1, word2);
+        Entry<V> entry = segmentFor(key).get(graphVersion, key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * 缓存一个结果，必要时淘汰最久未使用的条目.
+     *
+     * @param graphVersion 计算结果所用的图版本.
+     * @param word1        第一个单词.
+     * @param word2        第二个单词.
+     * @param value        结果，不能为null.
+     */
+    void put(final long graphVersion, final String word1, final String word2,
+             final V value) {
+        Key key = new Key(word1, word2);
+        long size = ENTRY_OVERHEAD + 2 * STRING_OVERHEAD
+                + word1.length() + word2.length()
+                + weigher.applyAsLong(value);
+        Segment<V> segment = segmentFor(key);
+        evictions.add(segment.put(graphVersion, key,
+                new Entry<>(value, size)));
+    }
+
+    /**
+     * 清空缓存，之后任何版本都可以写入，用于图的版本号被重置时.
+     */
+    void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment<V> segmentFor(final Key key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * 获取条目数.
+     *
+     * @return 条目数.
+     */
+    int size() {
+        int total = 0;
+        for (Segment<V> segment : segments) {
+            total += segment.size();
+        }
+        return total;
+    }
+
+    /**
+     * 获取所有条目的估计字节数.
+     *
+     * @return 字节数.
+     */
+    long bytes() {
+        long total = 0;
+        for (Segment<V> segment : segments) {
+            total += segment.bytes();
+        }
+        return total;
+    }
+
+    /**
+     * 获取命中次数.
+     *
+     * @return 命中次数.
+     */
+    long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * 获取未命中次数.
+     *
+     * @return 未命中次数.
+     */
+    long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 获取因超过上限被淘汰的条目数.
+     *
+     * @return 淘汰的条目数.
+     */
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * 把统计信息格式化为一行文本.
+     *
+     * @return 统计信息.
+     */
+    String statistics() {
+        long hit = hitCount();
+        long total = hit + missCount();
+        return "entries: " + size() + ", bytes: " + bytes()
+                + ", hits: " + hit + ", misses: " + missCount()
+                + ", hit rate: " + String.format("%.1f%%",
+                        total == 0 ? 0.0 : 100.0 * hit / total)
+                + ", evictions: " + evictionCount();
+    }
+
+    /**
+     * 缓存的一段：独立加锁、按访问顺序淘汰的LRU.
+     *
+     * @param <V> 查询结果的类型.
+     */
+    private static final class Segment<V> {
+        /**
+         * 本段的条目数上限.
+         */
+        private final int maxEntries;
+
+        /**
+         * 本段的字节数上限.
+         */
+        private final long maxBytes;
+
+        /**
+         * 按访问顺序排列的条目，最久未使用的在最前面.
+         */
+        private final LinkedHashMap<Key, Entry<V>> entries =
+                new LinkedHashMap<>(16, 0.75f, true);
+
+        /**
+         * 本段中结果所属的图版本.
+         */
+        private long version = Long.MIN_VALUE;
+
+        /**
+         * 本段所有条目的估计字节数.
+         */
+        private long bytes;
+
+        Segment(final int entryLimit, final long byteLimit) {
+            this.maxEntries = entryLimit;
+            this.maxBytes = byteLimit;
+        }
+
+        synchronized Entry<V> get(final long graphVersion, final Key key) {
+            return advance(graphVersion) ? entries.get(key) : null;
+        }
+
+        /**
+         * 写入一个条目，必要时淘汰最久未使用的条目.
+         *
+         * @return 淘汰的条目数.
+         */
+        synchronized int put(final long graphVersion, final Key key,
+                             final Entry<V> entry) {
+            if (maxEntries == 0 || entry.size > maxBytes
+                    || !advance(graphVersion)) {
+                return 0;
+            }
+            Entry<V> old = entries.put(key, entry);
+            bytes += entry.size - (old == null ? 0 : old.size);
+            int evicted = 0;
+            Iterator<Entry<V>> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || bytes > maxBytes) {
+                bytes -= eldest.next().size;
+                eldest.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            bytes = 0;
+            version = Long.MIN_VALUE;
+        }
+
+        /**
+         * 对齐到查询所用的版本：版本更新时清空本段.
+         *
+         * @return 版本比本段旧、不能读写时返回false.
+         */
+        private boolean advance(final long graphVersion) {
+            if (graphVersion < version) {
+                return false;
+            }
+            if (graphVersion > version) {
+                entries.clear();
+                bytes = 0;
+                version = graphVersion;
+            }
+            return true;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * 缓存的键：有序的单词对.
+     */
+    private static final class Key {
+        /**
+         * 第一个单词.
+         */
+        private final String first;
+
+        /**
+         * 第二个单词.
+         */
+        private final String second;
+
+        Key(final String word1, final String word2) {
+            this.first = word1;
+            this.second = word2;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return first.equals(other.first) && second.equals(other.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return first.hashCode() * 31 + second.hashCode();
+        }
+    }
+
+    /**
+     * 缓存的条目.
+     *
+     * @param <V> 查询结果的类型.
+     */
+    private static final class Entry<V> {
+        /**
+         * 查询结果.
+         */
+        private final V value;
+
+        /**
+         * 条目的估计字节数.
+         */
+        private final long size;
+
+        Entry(final V result, final long entrySize) {
+            this.value = result;
+            this.size = entrySize;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package cn.judge.lab3;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QueryServer类通过本地HTTP服务提供图查询，取代交互式的命令行.
+ * 图只加载一次，所有请求在ConcurrentGraph发布的快照上无锁执行，
+ * 不读写控制台. 每个请求在自己的虚拟线程中处理（运行时不支持虚拟线程时
+ * 退回到固定大小的线程池）；同时处理的请求数有上限，超出的请求立即
+ * 得到503响应，而不是在队列中无限堆积.
+ *
+ * <p>接口（响应均为UTF-8纯文本）：
+ * <ul>
+ *   <li>GET /bridge?word1=..&amp;word2=.. 查询桥接词</li>
+ *   <li>POST /generate?seed=.. 根据桥接词改写请求体中的文本</li>
+ *   <li>GET /path?from=..&amp;to=.. 最短路径，省略to时给出到所有单词的路径</li>
+ *   <li>GET /reachable?from=..&amp;to=.. 判断是否存在路径，回答yes或no</li>
+ *   <li>GET /walk?seed=.. 随机游走</li>
+ *   <li>POST /append 把请求体中的文本追加到图中，积累的修改达到
+ *   ConcurrentGraph的发布间隔时才发布新快照；尚未发布时回答202
+ *   和待发布的修改数</li>
+ *   <li>POST /publish 立即发布包含所有已追加文本的快照</li>
+ *   <li>GET /stats 查询缓存的命中率等统计信息</li>
+ * </ul>
+ */
+final class QueryServer implements AutoCloseable {
+    /**
+     * 默认的并发请求上限.
+     */
+    static final int DEFAULT_MAX_CONCURRENT = 256;
+
+    /**
+     * 请求过多时建议客户端等待的秒数.
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    /**
+     * 被查询的图.
+     */
+    private final ConcurrentGraph graph;
+
+    /**
+     * HTTP服务.
+     */
+    private final HttpServer server;
+
+    /**
+     * 处理请求的线程.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * 限制同时处理的请求数.
+     */
+    private final Semaphore permits;
+
+    /**
+     * 创建服务并绑定地址，调用start后开始接受请求.
+     *
+     * @param concurrentGraph 被查询的图.
+     * @param address         监听地址，端口为0时自动选择.
+     * @param maxConcurrent   同时处理的请求数上限.
+     * @throws IOException 绑定地址失败时抛出.
+     */
+    QueryServer(final ConcurrentGraph concurrentGraph,
+                final InetSocketAddress address, final int maxConcurrent)
+            throws IOException {
+        this.graph = concurrentGraph;
+        this.permits = new Semaphore(maxConcurrent);
+        this.executor = newExecutor(maxConcurrent);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/bridge", limited(this::bridge));
+        server.createContext("/generate", limited(this::generate));
+        server.createContext("/path", limited(this::path));
+        server.createContext("/reachable", limited(this::reachable));
+        server.createContext("/walk", limited(this::walk));
+        server.createContext("/append", limited(this::append));
+        server.createContext("/publish", limited(this::publish));
+        server.createContext("/stats", limited(this::stats));
+    }
+
+    /**
+     * 每个任务一个虚拟线程；运行时不支持时使用固定大小的线程池，
+     * 线程都忙时由接收线程自己处理请求，它会因拿不到许可而立即返回503.
+     */
+    private static ExecutorService newExecutor(final int threads) {
+        try {
+            // 通过反射调用，在不支持虚拟线程的运行时上同样可以编译和运行
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException
+                 | UnsupportedOperationException e) {
+            return new ThreadPoolExecutor(threads, threads,
+                    0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+
+    /**
+     * 开始接受请求.
+     */
+    void start() {
+        server.start();
+    }
+
+    /**
+     * 获取实际监听的端口.
+     *
+     * @return 端口号.
+     */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * 停止接受请求，等待处理中的请求完成后关闭.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * 为处理器加上并发上限：拿不到许可时立即返回503.
+     */
+    private HttpHandler limited(final HttpHandler handler) {
+        return exchange -> {
+            if (!permits.tryAcquire()) {
+                exchange.getResponseHeaders()
+                        .set("Retry-After", RETRY_AFTER_SECONDS);
+                respond(exchange, 503, "Server busy, try again later.");
+                exchange.close();
+                return;
+            }
+            try {
+                handler.handle(exchange);
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage());
+            } finally {
+                permits.release();
+                exchange.close();
+            }
+        };
+    }
+
+    private void bridge(final HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        respond(exchange, 200, graph.queryBridgeWords(
+                required(query, "word1"), required(query, "word2")));
+    }
+
+    private void generate(final HttpExchange exchange) throws IOException {
+        requirePost(exchange);
+        long seed = Long.parseLong(
+                query(exchange).getOrDefault("seed", "0"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Reader in = new InputStreamReader(exchange.getRequestBody(),
+                StandardCharsets.UTF_8);
+             Writer out = new OutputStreamWriter(bytes,
+                     StandardCharsets.UTF_8)) {
+            graph.generateNewText(in, out, seed);
+        }
+        respond(exchange, 200, bytes.toByteArray());
+    }
+
+    private void path(final HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        String from = required(query, "from");
+        String to = query.getOrDefault("to", "");
+        if (to.isEmpty()) {
+            ShortestPathTree tree = graph.shortestPathsFrom(from);
+            if (tree == null) {
+                respond(exchange, 404, "No \"" + from + "\" in the graph!");
+                return;
+            }
+            StringBuilder body = new StringBuilder();
+            for (int id = 0; id < tree.size(); id++) {
+                if (tree.word(id).equals(from)) {
+                    continue;
+                }
+                if (tree.isReachable(id)) {
+                    body.append(String.join(" -> ", tree.pathTo(id)))
+                            .append(" (length: ").append(tree.distance(id))
+                            .append(")\n");
+                } else {
+                    body.append("No path from ").append(from).append(" to ")
+                            .append(tree.word(id)).append('\n');
+                }
+            }
+            respond(exchange, 200, body.toString());
+            return;
+        }
+        CompactGraph snapshot = graph.snapshot();
+        String missing = DirectedGraph.missingWordsMessage(
+                from, snapshot.id(from) >= 0, to, snapshot.id(to) >= 0);
+        if (missing != null) {
+            respond(exchange, 404, missing);
+            return;
+        }
+        // 之后发布的快照只会增加单词，检查过的单词仍然存在
+        Pair<List<String>, Integer> path = graph.shortestPath(from, to);
+        if (path.getFirst() == null) {
+            respond(exchange, 404, "No road!");
+            return;
+        }
+        respond(exchange, 200, "The shortest path is: "
+                + String.join(" -> ", path.getFirst())
+                + "\nThe shortest path's len is: " + path.getSecond());
+    }
+
+    private void reachable(final HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        String from = required(query, "from");
+        String to = required(query, "to");
+        CompactGraph snapshot = graph.snapshot();
+        String missing = DirectedGraph.missingWordsMessage(
+                from, snapshot.id(from) >= 0, to, snapshot.id(to) >= 0);
+        if (missing != null) {
+            respond(exchange, 404, missing);
+            return;
+        }
+        respond(exchange, 200, snapshot.isReachable(from, to) ? "yes" : "no");
+    }
+
+    private void walk(final HttpExchange exchange) throws IOException {
+        String seed = query(exchange).get("seed");
+        Random random = seed == null
+                ? new Random() : new Random(Long.parseLong(seed));
+        respond(exchange, 200, String.join("\n", graph.randomWalk(random)));
+    }
+
+    private void append(final HttpExchange exchange) throws IOException {
+        requirePost(exchange);
+        String text = new String(exchange.getRequestBody().readAllBytes(),
+                StandardCharsets.UTF_8);
+        // 每次都发布会重新冻结整个图，交给ConcurrentGraph按间隔批量发布
+        long pending = graph.append(text);
+        long version = graph.snapshot().version();
+        if (pending == 0) {
+            respond(exchange, 200, "Published version: " + version);
+            return;
+        }
+        // 文本已接受但还不能查询
+        respond(exchange, 202, "Appended; published version: " + version
+                + ", pending changes: " + pending);
+    }
+
+    private void publish(final HttpExchange exchange) throws IOException {
+        requirePost(exchange);
+        graph.publish();
+        respond(exchange, 200,
+                "Published version: " + graph.snapshot().version());
+    }
+
+    private void stats(final HttpExchange exchange) throws IOException {
+        respond(exchange, 200, graph.cacheStatistics());
+    }
+
+    private static void requirePost(final HttpExchange exchange) {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            throw new IllegalArgumentException("POST required");
+        }
+    }
+
+    private static String required(final Map<String, String> query,
+                                   final String name) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Missing parameter \"" + name + "\"");
+        }
+        return value;
+    }
+
+    /**
+     * 解析URL中的查询参数，单词统一转换为小写，与命令行一致.
+     */
+    private static Map<String, String> query(final HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8)
+                            .toLowerCase());
+        }
+        return params;
+    }
+
+    private static void respond(final HttpExchange exchange, final int status,
+                                final String body) throws IOException {
+        respond(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(final HttpExchange exchange, final int status,
+                                final byte[] body) throws IOException {
+        exchange.getResponseHeaders()
+                .set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1
+                : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
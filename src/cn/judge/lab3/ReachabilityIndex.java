@@ -0,0 +1,402 @@
+package cn.judge.lab3;
+
+import java.util.Arrays;
+
+/**
+ * ReachabilityIndex类回答“从单词u能否到达单词v”，不做最短路径搜索.
+ * 先用迭代的Tarjan算法把图分解为强连通分量，同一分量内的节点互相可达；
+ * 分量之间的边构成一个有向无环图（缩点图）. Tarjan算法先完成的分量
+ * 排在前面，因此缩点图中的边总是从编号大的分量指向编号小的分量，
+ * 分量编号本身就是一个拓扑序标签.
+ * 另外对缩点图做两次顺序不同的深度优先遍历，为每个分量记录区间
+ * [low, post]：post是后序编号，low是它能到达的所有分量中最小的post.
+ * 若c能到达d，d的区间一定包含在c的区间内，所以拓扑序或任一区间
+ * 不满足时可以在常数时间内断定不可达；d在c的遍历子树中时断定可达.
+ * 只有标签无法判断的查询才在缩点图上搜索，并用同样的标签剪枝.
+ * 索引只读，可以被多个线程同时查询.
+ */
+final class ReachabilityIndex {
+    /**
+     * 区间标签的数量，即缩点图的遍历次数.
+     */
+    private static final int TRAVERSALS = 2;
+
+    /**
+     * 被索引的紧凑图.
+     */
+    private final CompactGraph graph;
+
+    /**
+     * 每个节点所属的分量编号.
+     */
+    private final int[] component;
+
+    /**
+     * 分量数量.
+     */
+    private final int components;
+
+    /**
+     * 分量c在缩点图中的后继位于dagTargets[dagOffsets[c]]到
+     * dagTargets[dagOffsets[c + 1] - 1]，不含重复.
+     */
+    private final int[] dagOffsets;
+
+    /**
+     * 缩点图中每条边的目标分量.
+     */
+    private final int[] dagTargets;
+
+    /**
+     * 每次遍历中每个分量的后序编号.
+     */
+    private final int[][] post;
+
+    /**
+     * 每次遍历中每个分量能到达的最小后序编号.
+     */
+    private final int[][] low;
+
+    /**
+     * 第一次遍历中每个分量的遍历子树的最小后序编号.
+     */
+    private final int[] treeLow;
+
+    /**
+     * 复用的搜索状态，不绑定线程.
+     */
+    private final ScratchPool<Search> searches = new ScratchPool<>(
+            () -> new Search(components()), ScratchPool.DEFAULT_MAX_IDLE);
+
+    /**
+     * 为紧凑图构建可达性索引，耗时与节点数加边数成正比.
+     *
+     * @param compact 紧凑图.
+     */
+    ReachabilityIndex(final CompactGraph compact) {
+        this.graph = compact;
+        int n = compact.nodeCount();
+        component = new int[n];
+        components = tarjan(compact, component);
+        int[][] dag = condense(compact, component, components);
+        dagOffsets = dag[0];
+        dagTargets = dag[1];
+        post = new int[TRAVERSALS][components];
+        low = new int[TRAVERSALS][components];
+        treeLow = new int[components];
+        for (int t = 0; t < TRAVERSALS; t++) {
+            label(t, t == 0 ? treeLow : null);
+        }
+    }
+
+    /**
+     * 迭代的Tarjan算法，用显式栈代替递归，长链也不会栈溢出.
+     *
+     * @return 分量数量.
+     */
+    private static int tarjan(final CompactGraph compact, final int[] comp) {
+        int n = compact.nodeCount();
+        // order[u]为0表示未访问，否则为访问次序加1；分量确定后置为-1
+        int[] order = new int[n];
+        int[] lowLink = new int[n];
+        int[] cursor = new int[n];
+        int[] callStack = new int[n];
+        int[] sccStack = new int[n];
+        int visited = 0;
+        int count = 0;
+        int sccTop = 0;
+        for (int root = 0; root < n; root++) {
+            if (order[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth++] = root;
+            order[root] = ++visited;
+            lowLink[root] = visited;
+            cursor[root] = compact.edgeStart(root);
+            sccStack[sccTop++] = root;
+            while (depth > 0) {
+                int u = callStack[depth - 1];
+                if (cursor[u] < compact.edgeEnd(u)) {
+                    int v = compact.target(cursor[u]++);
+                    if (order[v] == 0) {
+                        order[v] = ++visited;
+                        lowLink[v] = visited;
+                        cursor[v] = compact.edgeStart(v);
+                        sccStack[sccTop++] = v;
+                        callStack[depth++] = v;
+                    } else if (order[v] > 0) {
+                        lowLink[u] = Math.min(lowLink[u], order[v]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (depth > 0) {
+                    int parent = callStack[depth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[u]);
+                }
+                if (lowLink[u] == order[u]) {
+                    int w;
+                    do {
+                        w = sccStack[--sccTop];
+                        order[w] = -1;
+                        comp[w] = count;
+                    } while (w != u);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 构建缩点图的CSR表示，去掉分量内部的边和重复的边.
+     *
+     * @return 偏移数组和目标数组.
+     */
+    private static int[][] condense(final CompactGraph compact,
+                                    final int[] comp, final int count) {
+        int n = compact.nodeCount();
+        // 按分量把节点分组，逐个分量收集出边
+        int[] memberOffsets = new int[count + 1];
+        for (int u = 0; u < n; u++) {
+            memberOffsets[comp[u] + 1]++;
+        }
+        for (int c = 0; c < count; c++) {
+            memberOffsets[c + 1] += memberOffsets[c];
+        }
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(memberOffsets, count);
+        for (int u = 0; u < n; u++) {
+            members[fill[comp[u]]++] = u;
+        }
+        int[] offsets = new int[count + 1];
+        int[] targets = new int[Math.max(1, compact.edgeCount())];
+        // lastSeen[d]为c + 1表示分量c已经记录过到d的边
+        int[] lastSeen = new int[count];
+        int size = 0;
+        for (int c = 0; c < count; c++) {
+            offsets[c] = size;
+            for (int i = memberOffsets[c]; i < memberOffsets[c + 1]; i++) {
+                int u = members[i];
+                for (int e = compact.edgeStart(u); e < compact.edgeEnd(u);
+                     e++) {
+                    int d = comp[compact.target(e)];
+                    if (d != c && lastSeen[d] != c + 1) {
+                        lastSeen[d] = c + 1;
+                        targets[size++] = d;
+                    }
+                }
+            }
+        }
+        offsets[count] = size;
+        return new int[][] {offsets, Arrays.copyOf(targets, size)};
+    }
+
+    /**
+     * 对缩点图做一次深度优先遍历，计算第t个区间标签.
+     * 偶数次遍历按编号顺序访问根和后继，奇数次按相反的顺序，
+     * 使两个区间尽量不同.
+     *
+     * @param subtreeLow 非null时记录每个分量的遍历子树的最小后序编号.
+     */
+    private void label(final int t, final int[] subtreeLow) {
+        int[] postOrder = post[t];
+        int[] lowest = low[t];
+        boolean reversed = (t & 1) == 1;
+        int[] cursor = new int[components];
+        int[] stack = new int[components];
+        boolean[] visited = new boolean[components];
+        int counter = 0;
+        for (int i = 0; i < components; i++) {
+            // 编号大的分量更靠近源头，从它们开始遍历子树更大
+            int root = reversed ? i : components - 1 - i;
+            if (visited[root]) {
+                continue;
+            }
+            int depth = 0;
+            stack[depth++] = root;
+            visited[root] = true;
+            cursor[root] = 0;
+            lowest[root] = Integer.MAX_VALUE;
+            if (subtreeLow != null) {
+                subtreeLow[root] = counter;
+            }
+            while (depth > 0) {
+                int c = stack[depth - 1];
+                int degree = dagOffsets[c + 1] - dagOffsets[c];
+                if (cursor[c] < degree) {
+                    int k = cursor[c]++;
+                    int d = dagTargets[reversed
+                            ? dagOffsets[c + 1] - 1 - k : dagOffsets[c] + k];
+                    if (!visited[d]) {
+                        visited[d] = true;
+                        cursor[d] = 0;
+                        lowest[d] = Integer.MAX_VALUE;
+                        if (subtreeLow != null) {
+                            subtreeLow[d] = counter;
+                        }
+                        stack[depth++] = d;
+                    } else {
+                        lowest[c] = Math.min(lowest[c], lowest[d]);
+                    }
+                    continue;
+                }
+                postOrder[c] = counter++;
+                lowest[c] = Math.min(lowest[c], postOrder[c]);
+                depth--;
+                if (depth > 0) {
+                    int parent = stack[depth - 1];
+                    lowest[parent] = Math.min(lowest[parent], lowest[c]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断是否存在从节点from到节点to的路径，节点到自身总是可达.
+     *
+     * @param from 起始节点编号.
+     * @param to   目标节点编号.
+     * @return 可达时返回true.
+     */
+    boolean reachable(final int from, final int to) {
+        int c = component[from];
+        int d = component[to];
+        if (c == d) {
+            return true;
+        }
+        if (!mayReach(c, d)) {
+            return false;
+        }
+        if (treeLow[c] <= post[0][d] && post[0][d] <= post[0][c]) {
+            return true;
+        }
+        Search search = searches.borrow();
+        try {
+            return search.run(c, d);
+        } finally {
+            searches.release(search);
+        }
+    }
+
+    /**
+     * 用拓扑序和区间标签判断分量c是否可能到达分量d.
+     *
+     * @return 标签断定不可达时返回false.
+     */
+    private boolean mayReach(final int c, final int d) {
+        if (c < d) {
+            return false;
+        }
+        for (int t = 0; t < TRAVERSALS; t++) {
+            if (post[t][d] > post[t][c] || low[t][d] < low[t][c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获取节点所属的强连通分量编号.
+     * 若节点u能到达另一个分量中的节点v，则u的分量编号大于v的.
+     *
+     * @param id 节点编号.
+     * @return 分量编号.
+     */
+    int component(final int id) {
+        return component[id];
+    }
+
+    /**
+     * 获取强连通分量的数量.
+     *
+     * @return 分量数量.
+     */
+    int components() {
+        return components;
+    }
+
+    /**
+     * 获取缩点图的边数.
+     *
+     * @return 边数.
+     */
+    int dagEdgeCount() {
+        return dagTargets.length;
+    }
+
+    /**
+     * 获取被索引的紧凑图.
+     *
+     * @return 紧凑图.
+     */
+    CompactGraph graph() {
+        return graph;
+    }
+
+    /**
+     * 估计索引占用的内存字节数，不含复用的搜索状态.
+     *
+     * @return 字节数.
+     */
+    long memoryBytes() {
+        return 4L * (component.length + dagOffsets.length + dagTargets.length
+                + (2L * TRAVERSALS + 1) * components);
+    }
+
+    /**
+     * 在缩点图上搜索的状态，用标记值代替每次清空访问数组.
+     */
+    private final class Search {
+        /**
+         * 每个分量最后一次被访问时的标记值.
+         */
+        private final int[] mark;
+
+        /**
+         * 待访问的分量.
+         */
+        private final int[] stack;
+
+        /**
+         * 本次搜索的标记值.
+         */
+        private int stamp;
+
+        Search(final int count) {
+            mark = new int[count];
+            stack = new int[count];
+        }
+
+        /**
+         * 从分量c出发深度优先搜索分量d，跳过标签表明到不了d的分量.
+         *
+         * @return 找到d时返回true.
+         */
+        boolean run(final int c, final int d) {
+            if (++stamp == 0) {
+                Arrays.fill(mark, 0);
+                stamp = 1;
+            }
+            int top = 0;
+            stack[top++] = c;
+            mark[c] = stamp;
+            while (top > 0) {
+                int x = stack[--top];
+                for (int e = dagOffsets[x]; e < dagOffsets[x + 1]; e++) {
+                    int y = dagTargets[e];
+                    if (y == d || treeLow[y] <= post[0][d]
+                            && post[0][d] <= post[0][y]) {
+                        return true;
+                    }
+                    if (mark[y] != stamp && mayReach(y, d)) {
+                        mark[y] = stamp;
+                        stack[top++] = y;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
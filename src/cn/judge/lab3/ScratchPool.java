@@ -0,0 +1,97 @@
+package cn.judge.lab3;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * ScratchPool类保存可以复用的查询状态（搜索引擎、访问标记数组等）.
+ * 查询前借出一个对象，查询后归还；池中没有空闲对象时新建一个.
+ * 与ThreadLocal不同，对象不绑定线程，每个请求一个虚拟线程时
+ * 也能复用. 空闲对象的数量有上限，超过时归还的对象直接丢弃，
+ * 并发高峰过后池不会一直占着内存.
+ *
+ * @param <T> 被复用的对象类型，同一时刻只被一个借用者使用.
+ */
+final class ScratchPool<T> {
+    /**
+     * 默认的空闲对象上限.
+     */
+    static final int DEFAULT_MAX_IDLE =
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 创建新对象.
+     */
+    private final Supplier<T> factory;
+
+    /**
+     * 空闲对象上限.
+     */
+    private final int maxIdle;
+
+    /**
+     * 空闲对象.
+     */
+    private final ConcurrentLinkedQueue<T> idle =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * 空闲对象的数量，与idle的大小一致（ConcurrentLinkedQueue的size
+     * 需要遍历整个队列）.
+     */
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * 累计创建的对象数.
+     */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * 构造一个对象池.
+     *
+     * @param supplier   创建新对象.
+     * @param idleLimit  空闲对象上限.
+     */
+    ScratchPool(final Supplier<T> supplier, final int idleLimit) {
+        this.factory = supplier;
+        this.maxIdle = idleLimit;
+    }
+
+    /**
+     * 借出一个对象，没有空闲对象时新建.
+     *
+     * @return 只由调用方使用的对象，用完后应调用release归还.
+     */
+    T borrow() {
+        T item = idle.poll();
+        if (item != null) {
+            idleCount.decrementAndGet();
+            return item;
+        }
+        created.incrementAndGet();
+        return factory.get();
+    }
+
+    /**
+     * 归还借出的对象，空闲对象已达上限时丢弃它.
+     *
+     * @param item 借出的对象.
+     */
+    void release(final T item) {
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(item);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * 获取累计创建的对象数.
+     *
+     * @return 对象数.
+     */
+    int createdCount() {
+        return created.get();
+    }
+}
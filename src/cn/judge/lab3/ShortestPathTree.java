@@ -0,0 +1,147 @@
+package cn.judge.lab3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ShortestPathTree类保存一次单源最短路径计算的结果.
+ * 一次搜索得到起点到所有可达单词的距离和前驱，
+ * 具体的路径只在调用pathTo时才沿前驱回溯生成.
+ */
+final class ShortestPathTree {
+    /**
+     * 所属的紧凑图.
+     */
+    private final CompactGraph graph;
+
+    /**
+     * 起点编号.
+     */
+    private final int source;
+
+    /**
+     * 每个节点到起点的最短距离，不可达为PathEngine.UNREACHABLE.
+     */
+    private final int[] distances;
+
+    /**
+     * 每个节点在最短路径上的前驱，没有前驱为-1.
+     */
+    private final int[] previous;
+
+    /**
+     * 构造一棵最短路径树.
+     *
+     * @param compact    所属的紧凑图.
+     * @param sourceId   起点编号.
+     * @param dist       每个节点的最短距离.
+     * @param predecessors 每个节点的前驱.
+     */
+    ShortestPathTree(final CompactGraph compact, final int sourceId,
+                     final int[] dist, final int[] predecessors) {
+        this.graph = compact;
+        this.source = sourceId;
+        this.distances = dist;
+        this.previous = predecessors;
+    }
+
+    /**
+     * 获取起点单词.
+     *
+     * @return 起点单词.
+     */
+    String source() {
+        return graph.word(source);
+    }
+
+    /**
+     * 获取节点编号上限，用于按编号遍历所有单词.
+     *
+     * @return 节点数量.
+     */
+    int size() {
+        return distances.length;
+    }
+
+    /**
+     * 判断节点是否可达.
+     *
+     * @param id 节点编号.
+     * @return 可达时返回true.
+     */
+    boolean isReachable(final int id) {
+        return distances[id] != PathEngine.UNREACHABLE;
+    }
+
+    /**
+     * 获取到节点的最短距离.
+     *
+     * @param id 节点编号.
+     * @return 最短距离，不可达时为PathEngine.UNREACHABLE.
+     */
+    int distance(final int id) {
+        return distances[id];
+    }
+
+    /**
+     * 获取到单词的最短距离.
+     *
+     * @param word 单词.
+     * @return 最短距离，不可达或不在图中时为-1.
+     */
+    int distance(final String word) {
+        int id = graph.id(word);
+        return id < 0 || !isReachable(id) ? -1 : distances[id];
+    }
+
+    /**
+     * 获取单词在最短路径上的前驱.
+     *
+     * @param word 单词.
+     * @return 前驱单词，起点、不可达或不在图中时返回null.
+     */
+    String predecessor(final String word) {
+        int id = graph.id(word);
+        return id < 0 || previous[id] < 0 ? null : graph.word(previous[id]);
+    }
+
+    /**
+     * 获取节点编号对应的单词.
+     *
+     * @param id 节点编号.
+     * @return 单词.
+     */
+    String word(final int id) {
+        return graph.word(id);
+    }
+
+    /**
+     * 生成从起点到节点的最短路径.
+     *
+     * @param id 节点编号.
+     * @return 路径上的单词，不可达时返回null.
+     */
+    List<String> pathTo(final int id) {
+        if (!isReachable(id)) {
+            return null;
+        }
+        List<String> path = new ArrayList<>();
+        for (int v = id; v >= 0; v = previous[v]) {
+            path.add(graph.word(v));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * 生成从起点到单词的最短路径.
+     *
+     * @param word 单词.
+     * @return 路径上的单词，不可达或不在图中时返回null.
+     */
+    List<String> pathTo(final String word) {
+        int id = graph.id(word);
+        return id < 0 ? null : pathTo(id);
+    }
+}
@@ -0,0 +1,322 @@
+package cn.judge.lab3;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * TextGenerator类根据桥接词以流式方式改写文本.
+ * 输入按空白字符切分为单词，相邻两个单词之间若存在桥接词，
+ * 就随机插入其中一个；输出中的单词之间用一个空格分隔，与generateNewText一致.
+ * 选择哪个桥接词只由种子和前一个单词在输入中的位置决定，
+ * 因此流式和并行改写、不同的分块和线程数都得到相同的输出.
+ * 单词通过字符区间直接在单词表中查找，处理每个单词时不创建新对象.
+ */
+final class TextGenerator {
+    /**
+     * 并行模式下每块文本的目标字符数.
+     * 分块只取决于输入本身，因此同一种子的输出与线程数无关.
+     */
+    static final int CHUNK_LENGTH = 64 * 1024;
+
+    /**
+     * 用于把单词位置散列为随机数的增量.
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * 流式读取时的缓冲区长度.
+     */
+    private static final int BUFFER_LENGTH = 8192;
+
+    /**
+     * 桥接词索引.
+     */
+    private final BridgeIndex index;
+
+    /**
+     * 并行模式下每块文本的目标字符数.
+     */
+    private final int chunkLength;
+
+    /**
+     * 构造一个使用指定桥接词索引的生成器.
+     *
+     * @param bridgeIndex 桥接词索引.
+     */
+    TextGenerator(final BridgeIndex bridgeIndex) {
+        this(bridgeIndex, CHUNK_LENGTH);
+    }
+
+    /**
+     * 构造一个使用指定桥接词索引的生成器，并指定并行模式的分块大小.
+     * 分块大小不影响输出.
+     *
+     * @param bridgeIndex 桥接词索引.
+     * @param chunkChars  并行模式下每块文本的目标字符数.
+     */
+    TextGenerator(final BridgeIndex bridgeIndex, final int chunkChars) {
+        if (chunkChars <= 0) {
+            throw new IllegalArgumentException(
+                    "chunk length must be positive: " + chunkChars);
+        }
+        this.index = bridgeIndex;
+        this.chunkLength = chunkChars;
+    }
+
+    /**
+     * 从Reader读取文本，边读边把改写结果写入Writer.
+     *
+     * @param in   输入.
+     * @param out  输出.
+     * @param seed 随机种子，相同的种子和输入总是产生相同的输出.
+     * @throws IOException 读写失败时抛出.
+     */
+    void generate(final Reader in, final Writer out, final long seed)
+            throws IOException {
+        Rewriter rewriter = new Rewriter(out, seed, 0);
+        char[] buf = new char[BUFFER_LENGTH];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            for (int i = 0; i < n; i++) {
+                rewriter.accept(buf[i]);
+            }
+        }
+        rewriter.endToken();
+        rewriter.finish();
+        out.flush();
+    }
+
+    /**
+     * 在多个线程中并行改写文本，输出与generate相同.
+     * 文本在空白处切分为块，跨块的相邻单词由前一块负责.
+     *
+     * @param input       输入的文本.
+     * @param parallelism 并行线程数.
+     * @param seed        随机种子.
+     * @return 改写后的文本.
+     */
+    String generateParallel(final String input, final int parallelism,
+                            final long seed) {
+        int[] cuts = chunkBoundaries(input);
+        int chunks = cuts.length - 1;
+        CharArrayWriter[] outputs = new CharArrayWriter[chunks];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, chunks).parallel()
+                    .forEach(i -> outputs[i] = rewriteChunk(
+                            input, cuts[i], cuts[i + 1], seed)))
+                    .join();
+        } finally {
+            pool.shutdown();
+        }
+        StringBuilder result = new StringBuilder(input.length());
+        for (CharArrayWriter output : outputs) {
+            result.append(output.toCharArray());
+        }
+        return result.toString();
+    }
+
+    private CharArrayWriter rewriteChunk(final String input, final int start,
+                                         final int end, final long seed) {
+        CharArrayWriter out = new CharArrayWriter(end - start);
+        Rewriter rewriter = new Rewriter(out, seed, start);
+        try {
+            for (int i = start; i < end; i++) {
+                rewriter.accept(input.charAt(i));
+            }
+            rewriter.endToken();
+            // 向后看下一块的第一个单词，处理跨块的单词对
+            int next = end;
+            while (next < input.length() && isSpace(input.charAt(next))) {
+                next++;
+            }
+            if (next == input.length()) {
+                rewriter.finish();
+            } else {
+                int tokenEnd = next;
+                while (tokenEnd < input.length()
+                        && !isSpace(input.charAt(tokenEnd))) {
+                    tokenEnd++;
+                }
+                char[] lookahead = new char[tokenEnd - next];
+                input.getChars(next, tokenEnd, lookahead, 0);
+                rewriter.finishBefore(index.graph().words()
+                        .find(lookahead, 0, lookahead.length));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out;
+    }
+
+    private int[] chunkBoundaries(final String input) {
+        int chunks = Math.max(1, input.length() / chunkLength);
+        int[] cuts = new int[chunks + 1];
+        for (int i = 1; i < chunks; i++) {
+            int cut = Math.max(cuts[i - 1], i * chunkLength);
+            while (cut < input.length() && !isSpace(input.charAt(cut))) {
+                cut++;
+            }
+            cuts[i] = cut;
+        }
+        cuts[chunks] = input.length();
+        return cuts;
+    }
+
+    /**
+     * 由种子和单词在输入中的位置确定地选出[0, bound)中的一个数.
+     * 用SplitMix64的混合函数打散，相邻位置得到的结果互不相关.
+     */
+    private static int choose(final long seed, final long position,
+                              final int bound) {
+        long z = seed + (position + 1) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (int) (((z >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * 与正则表达式\s一致的空白字符判断.
+     */
+    private static boolean isSpace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+                || c == '\f' || c == '\r';
+    }
+
+    /**
+     * 逐字符接收输入并输出改写结果的状态机.
+     */
+    private final class Rewriter {
+        /**
+         * 输出.
+         */
+        private final Writer out;
+
+        /**
+         * 随机种子.
+         */
+        private final long seed;
+
+        /**
+         * 下一个字符在输入中的位置.
+         */
+        private long position;
+
+        /**
+         * 桥接词编号的临时缓冲区.
+         */
+        private int[] bridges = new int[BUFFER_LENGTH];
+
+        /**
+         * 正在拼接的单词.
+         */
+        private char[] current = new char[BUFFER_LENGTH];
+
+        /**
+         * 正在拼接的单词长度.
+         */
+        private int currentLength;
+
+        /**
+         * 正在拼接的单词在输入中的起始位置.
+         */
+        private long currentStart;
+
+        /**
+         * 上一个单词，等待与下一个单词配对后输出.
+         */
+        private char[] previous = new char[BUFFER_LENGTH];
+
+        /**
+         * 上一个单词的长度，-1表示还没有单词.
+         */
+        private int previousLength = -1;
+
+        /**
+         * 上一个单词的编号，不在图中时为-1.
+         */
+        private int previousId = -1;
+
+        /**
+         * 上一个单词在输入中的起始位置.
+         */
+        private long previousStart;
+
+        Rewriter(final Writer output, final long randomSeed,
+                 final long start) {
+            this.out = output;
+            this.seed = randomSeed;
+            this.position = start;
+        }
+
+        void accept(final char c) throws IOException {
+            if (isSpace(c)) {
+                endToken();
+            } else {
+                if (currentLength == 0) {
+                    currentStart = position;
+                }
+                if (currentLength == current.length) {
+                    current = Arrays.copyOf(current, currentLength * 2);
+                }
+                current[currentLength++] = c;
+            }
+            position++;
+        }
+
+        void endToken() throws IOException {
+            if (currentLength == 0) {
+                return;
+            }
+            int id = index.graph().words().find(current, 0, currentLength);
+            if (previousLength >= 0) {
+                emitPrevious(id);
+            }
+            // 交换两个缓冲区，避免复制
+            char[] swap = previous;
+            previous = current;
+            current = swap;
+            previousLength = currentLength;
+            previousId = id;
+            previousStart = currentStart;
+            currentLength = 0;
+        }
+
+        void finish() throws IOException {
+            if (previousLength >= 0) {
+                out.write(previous, 0, previousLength);
+            }
+        }
+
+        void finishBefore(final int nextId) throws IOException {
+            if (previousLength >= 0) {
+                emitPrevious(nextId);
+            }
+        }
+
+        private void emitPrevious(final int nextId) throws IOException {
+            out.write(previous, 0, previousLength);
+            out.write(' ');
+            if (previousId < 0 || nextId < 0) {
+                return;
+            }
+            int degree = index.graph().outDegree(previousId);
+            if (bridges.length < degree) {
+                bridges = new int[degree];
+            }
+            int count = index.collect(previousId, nextId, bridges);
+            if (count > 0) {
+                out.write(index.graph().word(
+                        bridges[choose(seed, previousStart, count)]));
+                out.write(' ');
+            }
+        }
+    }
+}
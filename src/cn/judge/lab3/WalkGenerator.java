@@ -0,0 +1,312 @@
+package cn.judge.lab3;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+
+/**
+ * WalkGenerator类批量生成按边权加权的随机游走，不需要任何交互.
+ * 每个节点的出边预先构建Walker别名表（与紧凑图的边数组一一对应），
+ * 每一步只需一次随机数和一次比较即可按权重选出下一个单词.
+ * 第i条游走从第i % n个单词出发，使用由种子和i确定的随机数生成器，
+ * 因此结果与线程数无关；游走按批并行生成并按顺序写出，内存占用有界.
+ * 别名表只读，同一个实例可以被多个线程同时用于单条游走；单条游走的
+ * 访问标记从对象池借用，用标记值代替每次分配和清空访问数组.
+ */
+final class WalkGenerator {
+    /**
+     * 每批生成的游走条数.
+     */
+    static final int BATCH_SIZE = 4096;
+
+    /**
+     * 用于从种子派生每条游走随机数生成器的增量.
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * 输出缓冲区大小.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * 紧凑图.
+     */
+    private final CompactGraph graph;
+
+    /**
+     * 每条边被直接选中的概率（按所在节点的出度缩放到[0, 1]）.
+     */
+    private final double[] probability;
+
+    /**
+     * 未被直接选中时改选的边在该节点出边中的位置.
+     */
+    private final int[] alias;
+
+    /**
+     * 每个单词的UTF-8编码，写出时直接复制.
+     */
+    private final byte[][] wordBytes;
+
+    /**
+     * 复用的访问标记，不绑定线程.
+     */
+    private final ScratchPool<Marks> marks;
+
+    /**
+     * 为紧凑图构建别名表.
+     *
+     * @param compact 紧凑图.
+     */
+    WalkGenerator(final CompactGraph compact) {
+        this.graph = compact;
+        int m = compact.edgeCount();
+        probability = new double[m];
+        alias = new int[m];
+        int[] small = new int[0];
+        int[] large = new int[0];
+        double[] scaled = new double[0];
+        for (int u = 0; u < compact.nodeCount(); u++) {
+            int start = compact.edgeStart(u);
+            int degree = compact.outDegree(u);
+            if (degree == 0) {
+                continue;
+            }
+            if (scaled.length < degree) {
+                small = new int[degree];
+                large = new int[degree];
+                scaled = new double[degree];
+            }
+            long total = 0;
+            for (int i = 0; i < degree; i++) {
+                total += compact.weight(start + i);
+            }
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int i = 0; i < degree; i++) {
+                scaled[i] = (double) compact.weight(start + i) * degree / total;
+                if (scaled[i] < 1.0) {
+                    small[smallCount++] = i;
+                } else {
+                    large[largeCount++] = i;
+                }
+            }
+            // Vose算法：每次用一个不足1的槽位配一个超过1的槽位
+            while (smallCount > 0 && largeCount > 0) {
+                int s = small[--smallCount];
+                int l = large[--largeCount];
+                probability[start + s] = scaled[s];
+                alias[start + s] = l;
+                scaled[l] = scaled[l] + scaled[s] - 1.0;
+                if (scaled[l] < 1.0) {
+                    small[smallCount++] = l;
+                } else {
+                    large[largeCount++] = l;
+                }
+            }
+            // 剩下的槽位只受浮点误差影响，概率视为1
+            while (largeCount > 0) {
+                probability[start + large[--largeCount]] = 1.0;
+            }
+            while (smallCount > 0) {
+                probability[start + small[--smallCount]] = 1.0;
+            }
+        }
+        wordBytes = new byte[compact.nodeCount()][];
+        for (int v = 0; v < wordBytes.length; v++) {
+            wordBytes[v] = compact.word(v).getBytes(StandardCharsets.UTF_8);
+        }
+        int n = compact.nodeCount();
+        marks = new ScratchPool<>(() -> new Marks(n),
+                ScratchPool.DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * 按边权随机选择节点的下一个单词.
+     *
+     * @param node   当前节点编号.
+     * @param random 随机数生成器.
+     * @return 下一个节点编号，没有出边时返回-1.
+     */
+    int next(final int node, final RandomGenerator random) {
+        int degree = graph.outDegree(node);
+        if (degree == 0) {
+            return -1;
+        }
+        int start = graph.edgeStart(node);
+        int slot = random.nextInt(degree);
+        int chosen = random.nextDouble() < probability[start + slot]
+                ? slot : alias[start + slot];
+        return graph.target(start + chosen);
+    }
+
+    /**
+     * 从随机的单词出发按边权随机游走，走到没有出边的单词或
+     * 将要重复访问某个单词时停止，与交互式的随机游走规则相同.
+     *
+     * @param random 随机数生成器.
+     * @return 依次访问的单词.
+     */
+    List<String> randomWalk(final RandomGenerator random) {
+        List<String> visitedWords = new ArrayList<>();
+        int n = graph.nodeCount();
+        if (n == 0) {
+            return visitedWords;
+        }
+        Marks visited = marks.borrow();
+        try {
+            int stamp = visited.nextStamp();
+            int current = random.nextInt(n);
+            while (graph.outDegree(current) > 0) {
+                visitedWords.add(graph.word(current));
+                visited.mark[current] = stamp;
+                int next = next(current, random);
+                if (visited.mark[next] == stamp) {
+                    break;
+                }
+                current = next;
+            }
+        } finally {
+            marks.release(visited);
+        }
+        return visitedWords;
+    }
+
+    /**
+     * 生成若干条随机游走并写入文件，每行一条，单词之间用空格分隔.
+     * 游走达到最大长度或走到没有出边的单词时结束.
+     *
+     * @param path        输出文件路径.
+     * @param walks       游走条数.
+     * @param maxLength   每条游走的最大单词数.
+     * @param seed        随机种子.
+     * @param parallelism 并行线程数.
+     * @return 写出的单词总数.
+     * @throws IOException 写入失败时抛出.
+     * @throws IllegalArgumentException 游走条数为负数，或最大单词数、
+     *                                  线程数不是正数时抛出.
+     */
+    long generate(final Path path, final long walks, final int maxLength,
+                  final long seed, final int parallelism) throws IOException {
+        if (walks < 0 || maxLength <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("walks must not be negative,"
+                    + " max length and parallelism must be positive");
+        }
+        if (graph.nodeCount() == 0) {
+            Files.write(path, new byte[0]);
+            return 0;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        byte[][] lines = new byte[BATCH_SIZE][];
+        int[] lengths = new int[BATCH_SIZE];
+        long total = 0;
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(path), BUFFER_SIZE)) {
+            for (long first = 0; first < walks; first += BATCH_SIZE) {
+                long base = first;
+                int size = (int) Math.min(BATCH_SIZE, walks - first);
+                pool.submit(() -> IntStream.range(0, size).parallel()
+                        .forEach(i -> {
+                            int[] walk = new int[maxLength];
+                            int length = walk(base + i, seed, walk);
+                            lines[i] = encode(walk, length);
+                            lengths[i] = length;
+                        })).join();
+                for (int i = 0; i < size; i++) {
+                    out.write(lines[i]);
+                    total += lengths[i];
+                    lines[i] = null;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return total;
+    }
+
+    /**
+     * 生成第index条游走.
+     *
+     * @param index 游走序号.
+     * @param seed  随机种子.
+     * @param walk  输出数组，长度即最大单词数.
+     * @return 游走的单词数.
+     */
+    int walk(final long index, final long seed, final int[] walk) {
+        if (walk.length == 0) {
+            return 0;
+        }
+        SplittableRandom random =
+                new SplittableRandom(seed + index * GOLDEN_GAMMA);
+        int current = (int) (index % graph.nodeCount());
+        int length = 0;
+        walk[length++] = current;
+        while (length < walk.length) {
+            current = next(current, random);
+            if (current < 0) {
+                break;
+            }
+            walk[length++] = current;
+        }
+        return length;
+    }
+
+    private byte[] encode(final int[] walk, final int length) {
+        int size = length;
+        for (int i = 0; i < length; i++) {
+            size += wordBytes[walk[i]].length;
+        }
+        byte[] line = new byte[size];
+        int pos = 0;
+        for (int i = 0; i < length; i++) {
+            byte[] word = wordBytes[walk[i]];
+            System.arraycopy(word, 0, line, pos, word.length);
+            pos += word.length;
+            line[pos++] = i == length - 1 ? (byte) '\n' : (byte) ' ';
+        }
+        return line;
+    }
+
+    /**
+     * 单条游走的访问标记，mark[v]等于本次的标记值表示v已访问.
+     */
+    private static final class Marks {
+        /**
+         * 每个节点最后一次被访问时的标记值.
+         */
+        private final int[] mark;
+
+        /**
+         * 上一次游走的标记值.
+         */
+        private int stamp;
+
+        Marks(final int count) {
+            mark = new int[count];
+        }
+
+        /**
+         * 开始一次新的游走，标记值回绕时清空数组.
+         *
+         * @return 本次游走的标记值.
+         */
+        int nextStamp() {
+            if (++stamp == 0) {
+                Arrays.fill(mark, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+}
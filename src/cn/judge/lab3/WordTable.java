@@ -0,0 +1,230 @@
+package cn.judge.lab3;
+
+import java.util.Arrays;
+
+/**
+ * WordTable类把单词字符串驻留为从0开始的稠密整数编号.
+ * 使用开放寻址（线性探测）哈希表，既可以按String查找，
+ * 也可以直接按字符数组的区间查找，不必先创建String.
+ */
+final class WordTable {
+    /**
+     * 初始槽位数量，必须是2的幂.
+     */
+    private static final int INITIAL_SLOTS = 16;
+
+    /**
+     * 最大装载因子的分子（分母为4）.
+     */
+    private static final int LOAD_NUMERATOR = 3;
+
+    /**
+     * 估计内存时每个String对象（不含字符）的字节数：
+     * String对象24字节，字节数组对象头16字节.
+     */
+    private static final int STRING_OVERHEAD = 40;
+
+    /**
+     * 按编号存储的单词.
+     */
+    private String[] words;
+
+    /**
+     * 按编号存储的单词哈希值.
+     */
+    private int[] hashes;
+
+    /**
+     * 哈希槽位，存放编号加1，0表示空槽.
+     */
+    private int[] slots;
+
+    /**
+     * 已驻留的单词数量.
+     */
+    private int size;
+
+    /**
+     * 构造一个空的单词表.
+     */
+    WordTable() {
+        this(INITIAL_SLOTS);
+    }
+
+    /**
+     * 构造一个预留了容量的单词表.
+     *
+     * @param expected 预计的单词数量.
+     */
+    WordTable(final int expected) {
+        int capacity = INITIAL_SLOTS;
+        while (capacity * LOAD_NUMERATOR / 4 <= expected) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+        words = new String[Math.max(expected, INITIAL_SLOTS)];
+        hashes = new int[words.length];
+    }
+
+    /**
+     * 获取已驻留的单词数量.
+     *
+     * @return 单词数量.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 估计单词表占用的内存，每个String按对象头、字段和Latin-1字节数组计算.
+     *
+     * @return 字节数.
+     */
+    long memoryBytes() {
+        long bytes = 4L * (slots.length + hashes.length)
+                + 4L * words.length;
+        for (int id = 0; id < size; id++) {
+            bytes += STRING_OVERHEAD + words[id].length();
+        }
+        return bytes;
+    }
+
+    /**
+     * 按编号获取单词.
+     *
+     * @param id 单词编号.
+     * @return 单词字符串.
+     */
+    String word(final int id) {
+        return words[id];
+    }
+
+    /**
+     * 驻留一个单词，已存在时返回原编号.
+     *
+     * @param word 单词.
+     * @return 单词编号.
+     */
+    int intern(final String word) {
+        int hash = mix(word.hashCode());
+        int mask = slots.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return insert(word, hash, i);
+            }
+            if (hashes[slot - 1] == hash && words[slot - 1].equals(word)) {
+                return slot - 1;
+            }
+        }
+    }
+
+    /**
+     * 按String查找单词编号.
+     *
+     * @param word 单词.
+     * @return 单词编号，不存在时返回-1.
+     */
+    int find(final String word) {
+        if (word == null) {
+            return -1;
+        }
+        int hash = mix(word.hashCode());
+        int mask = slots.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            if (hashes[slot - 1] == hash && words[slot - 1].equals(word)) {
+                return slot - 1;
+            }
+        }
+    }
+
+    /**
+     * 按字符数组区间查找单词编号，不创建任何对象.
+     *
+     * @param buf 字符数组.
+     * @param off 起始下标.
+     * @param len 长度.
+     * @return 单词编号，不存在时返回-1.
+     */
+    int find(final char[] buf, final int off, final int len) {
+        int hash = mix(hash(buf, off, len));
+        int mask = slots.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            if (hashes[slot - 1] == hash
+                    && sameChars(words[slot - 1], buf, off, len)) {
+                return slot - 1;
+            }
+        }
+    }
+
+    /**
+     * 计算与String.hashCode一致的字符区间哈希值.
+     *
+     * @param buf 字符数组.
+     * @param off 起始下标.
+     * @param len 长度.
+     * @return 哈希值.
+     */
+    static int hash(final char[] buf, final int off, final int len) {
+        int h = 0;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h;
+    }
+
+    private int insert(final String word, final int hash, final int slot) {
+        if (size == words.length) {
+            words = Arrays.copyOf(words, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        words[id] = word;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 4 > slots.length * LOAD_NUMERATOR) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hashes[id] & mask;
+            while (newSlots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            newSlots[i] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    private static boolean sameChars(final String word, final char[] buf,
+                                     final int off, final int len) {
+        if (word.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (word.charAt(i) != buf[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(final int h) {
+        // 打散String.hashCode的低位，减少线性探测的聚集
+        int x = h * 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+}
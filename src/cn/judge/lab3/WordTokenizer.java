@@ -0,0 +1,129 @@
+package cn.judge.lab3;
+
+import java.util.Arrays;
+
+/**
+ * WordTokenizer类一次扫描文本，依次取出其中的单词.
+ * 只有ASCII字母属于单词，其余字符都视为分隔符，字母在复制时转换为小写.
+ * 与最初"先把非字母替换为空格、再转小写、再按空白切分"的结果相比只有
+ * 一处不同：文本以非字母开头时，split会在最前面产生一个空串，图中因此
+ * 多出一个标签为空的节点；分词器不会产生空单词，这个节点不再出现.
+ * 单词放在复用的字符数组中，取出单词本身不创建任何对象，
+ * 可以直接用WordTable按字符区间查找.
+ */
+final class WordTokenizer {
+    /**
+     * 单词缓冲区的初始长度.
+     */
+    private static final int INITIAL_WORD_LENGTH = 32;
+
+    /**
+     * 被切分的文本.
+     */
+    private final CharSequence text;
+
+    /**
+     * 扫描的结束下标（不含）.
+     */
+    private final int end;
+
+    /**
+     * 下一个待扫描字符的下标.
+     */
+    private int position;
+
+    /**
+     * 当前单词.
+     */
+    private char[] word = new char[INITIAL_WORD_LENGTH];
+
+    /**
+     * 当前单词的长度.
+     */
+    private int length;
+
+    /**
+     * 构造一个切分指定文本的分词器.
+     *
+     * @param input 被切分的文本.
+     */
+    WordTokenizer(final CharSequence input) {
+        this(input, 0, input.length());
+    }
+
+    /**
+     * 构造一个只切分文本中一段区间的分词器，区间外的字符不会被读取.
+     *
+     * @param input 被切分的文本.
+     * @param start 起始下标.
+     * @param stop  结束下标（不含）.
+     */
+    WordTokenizer(final CharSequence input, final int start, final int stop) {
+        this.text = input;
+        this.position = start;
+        this.end = stop;
+    }
+
+    /**
+     * 判断字符是否属于单词.
+     *
+     * @param c 字符.
+     * @return 是ASCII字母时返回true.
+     */
+    static boolean isLetter(final char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    /**
+     * 取出下一个单词.
+     *
+     * @return 取到单词时返回true，文本结束时返回false.
+     */
+    boolean next() {
+        int i = position;
+        while (i < end && !isLetter(text.charAt(i))) {
+            i++;
+        }
+        length = 0;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (!isLetter(c)) {
+                break;
+            }
+            if (length == word.length) {
+                word = Arrays.copyOf(word, length * 2);
+            }
+            word[length++] = (char) (c | 0x20);
+            i++;
+        }
+        position = i;
+        return length > 0;
+    }
+
+    /**
+     * 获取存放当前单词的字符数组，下一次调用next时会被覆盖.
+     *
+     * @return 字符数组，单词位于[0, length()).
+     */
+    char[] buffer() {
+        return word;
+    }
+
+    /**
+     * 获取当前单词的长度.
+     *
+     * @return 长度.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * 把当前单词复制为字符串，只在单词第一次出现时需要.
+     *
+     * @return 当前单词.
+     */
+    String word() {
+        return new String(word, 0, length);
+    }
+}